@@ -1,35 +1,59 @@
 package scheduler;
 
 import java.util.HashMap;
-import java.util.Vector;
+import java.util.Map;
 
 public class AdjacencyList {
 	
+	/**
+	 * Builds the adjacency-list of the given nodes directly from their
+	 * successor maps in O(V + E) time and memory. The edges are bucketed by
+	 * target first, so every row comes out in ascending node order.
+	 *
+	 * @param nodeToInteger number of each node, 0..size-1
+	 * @return list[i] holds the numbers of all successors of node i, sorted
+	 */
 	public static int[][] getAdjacencyList(HashMap<Node, Integer> nodeToInteger) {
 		int size = nodeToInteger.size();
-		boolean [][] adjacencyMatrix = new boolean[size][size];
+		int edges = 0;
 		for (Node nd : nodeToInteger.keySet()) {
-			for (Node succ : nd.allSuccessors().keySet()) {
-				adjacencyMatrix[nodeToInteger.get(nd)][nodeToInteger.get(succ)] = true;
+			edges += nd.allSuccessors().size();
+		}
+		
+		int[] source = new int[edges];
+		int[] target = new int[edges];
+		int[] rowLength = new int[size];
+		int[] targetStart = new int[size + 1];
+		int e = 0;
+		for (Map.Entry<Node, Integer> entry : nodeToInteger.entrySet()) {
+			int i = entry.getValue();
+			for (Node succ : entry.getKey().allSuccessors().keySet()) {
+				int j = nodeToInteger.get(succ);
+				source[e] = i;
+				target[e] = j;
+				rowLength[i]++;
+				targetStart[j + 1]++;
+				e++;
 			}
 		}
 		
+		// counting sort of the edges by target
+		for (int j = 0; j < size; j++) {
+			targetStart[j + 1] += targetStart[j];
+		}
+		int[] byTarget = new int[edges];
+		for (e = 0; e < edges; e++) {
+			byTarget[targetStart[target[e]]++] = e;
+		}
 		
-		int[][] list = new int[adjacencyMatrix.length][];
-
-		for (int i = 0; i < adjacencyMatrix.length; i++) {
-			Vector<Integer> v = new Vector<Integer>();
-			for (int j = 0; j < adjacencyMatrix[i].length; j++) {
-				if (adjacencyMatrix[i][j]) {
-					v.add(new Integer(j));
-				}
-			}
-
-			list[i] = new int[v.size()];
-			for (int j = 0; j < v.size(); j++) {
-				Integer in = (Integer) v.get(j);
-				list[i][j] = in.intValue();
-			}
+		int[][] list = new int[size][];
+		for (int i = 0; i < size; i++) {
+			list[i] = new int[rowLength[i]];
+			rowLength[i] = 0;
+		}
+		for (int k = 0; k < edges; k++) {
+			e = byTarget[k];
+			list[source[e]][rowLength[source[e]]++] = target[e];
 		}
 		
 		return list;
@@ -0,0 +1,45 @@
+package scheduler;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of a whole {@link SARetiming} run. Its duration is the
+ * wall-clock time of the run.
+ */
+@Name("scheduler.AnnealingRun")
+@Label("Annealing Run")
+@Category({ "Scheduler", "Simulated Annealing" })
+@Description("One retiming run by simulated annealing")
+class AnnealingRunEvent extends jdk.jfr.Event {
+
+	@Label("Run")
+	long run;
+
+	@Label("Graph Size")
+	int graphSize;
+
+	@Label("Initial Temperature")
+	float initTemp;
+
+	@Label("Temperature Levels")
+	int levels;
+
+	@Label("Move Evaluations")
+	long moveEvaluations;
+
+	@Label("Initial II")
+	int initII;
+
+	@Label("Best II")
+	int bestII;
+
+	@Label("Best Cost")
+	float bestCost;
+
+	@Label("Stop Reason")
+	String stopReason;
+
+}
@@ -0,0 +1,500 @@
+package scheduler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import scheduler.SARetiming.SARetimingResultPackage;
+
+/**
+ * Small benchmarks for the retiming code. They only measure; that the
+ * compared implementations give the same results is checked by the tests
+ * in the test source folder (make test).
+ * <p>
+ * Usage: Benchmark alloc|concurrent|tempering dotfile [runs]
+ * <br>
+ * Usage: Benchmark recmii|exact|registers dotfile|directory
+ * <br>
+ * Usage: Benchmark parse|cache dotfile|directory [runs]
+ * <br>
+ * Usage: Benchmark results dotfile|directory
+ */
+public class Benchmark {
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.printf("Usage: Benchmark alloc|concurrent|tempering dotfile [runs]%n");
+			System.err.printf("       Benchmark recmii|exact|registers dotfile|directory%n");
+			System.err.printf("       Benchmark parse|cache dotfile|directory [runs]%n");
+			System.err.printf("       Benchmark results dotfile|directory%n");
+			System.exit(-1);
+		}
+		int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		if (args[0].equals("alloc")) {
+			allocation(new Dot_reader(true).parse(args[1]), runs);
+		} else if (args[0].equals("concurrent")) {
+			concurrency(new Dot_reader(true).parse(args[1]), runs);
+		} else if (args[0].equals("recmii")) {
+			recMII(new File(args[1]));
+		} else if (args[0].equals("exact")) {
+			exact(new File(args[1]));
+		} else if (args[0].equals("registers")) {
+			registers(new File(args[1]));
+		} else if (args[0].equals("parse")) {
+			parse(new File(args[1]), runs);
+		} else if (args[0].equals("cache")) {
+			cache(new File(args[1]), runs);
+		} else if (args[0].equals("results")) {
+			results(new File(args[1]));
+		} else if (args[0].equals("tempering")) {
+			tempering(new Dot_reader(true).parse(args[1]), runs);
+		} else {
+			System.err.printf("Unknown benchmark %s%n", args[0]);
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Measures the heap allocation of SARetiming.run per evaluated move. The
+	 * annealing loop itself must not allocate, so only the setup of a run
+	 * (graph copies, result package) should show up and the bytes per move
+	 * should be far below one.
+	 * @param graph - graph to anneal
+	 * @param runs - number of measured runs, one additional warm up run is done
+	 */
+	public static void allocation(Graph graph, int runs) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.err.println("Allocation counting is not supported by this JVM");
+			return;
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+		long thread = Thread.currentThread().getId();
+
+		SARetiming sa = new SARetiming(graph);
+		sa.run(0);
+
+		System.out.println("Run\tMoves\t\tBytes\t\tBytes/move");
+		for (int i = 1; i <= runs; i++) {
+			long before = threads.getThreadAllocatedBytes(thread);
+			SARetimingResultPackage res = sa.run(0);
+			long bytes = threads.getThreadAllocatedBytes(thread) - before;
+			System.out.println(i + "\t" + res.moveEvaluations + "\t\t" + bytes + "\t\t" + ((double) bytes / (double) res.moveEvaluations));
+		}
+	}
+
+	/**
+	 * Runs seeded replicas of one engine first one after another, then all
+	 * at the same time, and compares the runtimes.
+	 * @param graph - graph to anneal
+	 * @param replicas - number of replicas (and threads)
+	 */
+	public static void concurrency(Graph graph, int replicas) {
+		long seed = 1;
+		SARetiming sa = new SARetiming(graph);
+		sa.setSeed(seed);
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < replicas; i++) {
+			sa.replica().run(0);
+		}
+		long sequentialTime = System.currentTimeMillis() - startTime;
+
+		sa = new SARetiming(graph);
+		sa.setSeed(seed);
+		List<Future<SARetimingResultPackage>> futures = new ArrayList<Future<SARetimingResultPackage>>(replicas);
+		ExecutorService executor = Executors.newFixedThreadPool(replicas);
+		startTime = System.currentTimeMillis();
+		for (int i = 0; i < replicas; i++) {
+			final SARetiming replica = sa.replica();
+			futures.add(executor.submit(new Callable<SARetimingResultPackage>() {
+				public SARetimingResultPackage call() {
+					return replica.run(0);
+				}
+			}));
+		}
+		try {
+			for (Future<SARetimingResultPackage> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+		long concurrentTime = System.currentTimeMillis() - startTime;
+
+		System.out.println("Replicas:		" + replicas);
+		System.out.println("Sequential runtime:	" + ((float) sequentialTime / 1000f) + "s");
+		System.out.println("Concurrent runtime:	" + ((float) concurrentTime / 1000f) + "s");
+	}
+
+	/**
+	 * Compares single chain annealing with parallel tempering on the same
+	 * graph: achieved II, cost and wall-clock of each run.
+	 * @param graph - graph to retime
+	 * @param runs - number of runs of each engine
+	 */
+	public static void tempering(Graph graph, int runs) {
+		SARetiming sa = new SARetiming(graph);
+		sa.setSeed(1);
+		ParallelTempering pt = new ParallelTempering(graph);
+		pt.setSeed(1);
+
+		System.out.println("Run\tSA II\tSA cost\t\tSA time\tPT II\tPT cost\t\tPT time");
+		long saTime = 0, ptTime = 0;
+		for (int i = 1; i <= runs; i++) {
+			SARetimingResultPackage a = sa.run(0);
+			SARetimingResultPackage b = pt.run(0);
+			saTime += a.wallclock;
+			ptTime += b.wallclock;
+			System.out.println(i + "\t" + a.bestII + "\t" + a.bestCost + "\t" + ((float) a.wallclock / 1000f) + "s"
+					+ "\t" + b.bestII + "\t" + b.bestCost + "\t" + ((float) b.wallclock / 1000f) + "s");
+		}
+		System.out.println("Average runtime SA:\t" + ((float) saTime / 1000f / runs) + "s");
+		System.out.println("Average runtime PT:\t" + ((float) ptTime / 1000f / runs) + "s");
+	}
+
+	/**
+	 * Computes the RecMII of the given graph or of all graphs in the given
+	 * directory with {@link CycleRatio}. For graphs with less than 200 nodes
+	 * the cycle enumeration of {@link minII#getMinII(Graph, boolean)} is
+	 * timed as well.
+	 * @param path - dot file or directory of dot files
+	 */
+	public static void recMII(File path) {
+		double maxTime = 0;
+		System.out.println("Graph\tSize\tRatio\tRecMII\tTime\tMinII\tTime");
+		for (File file : dotFiles(path)) {
+			Graph graph = new Dot_reader(true).parse(file.getPath());
+			long start = System.nanoTime();
+			CycleRatio ratio = new CycleRatio(graph);
+			double time = (System.nanoTime() - start) / 1e6;
+			maxTime = Math.max(maxTime, time);
+			String line = file.getName() + "\t" + graph.size() + "\t" + ratio.getNumerator() + "/" + ratio.getDenominator()
+					+ "\t" + ratio.getRecMII() + "\t" + String.format("%.2fms", time);
+			if (graph.size() < 200) {
+				start = System.nanoTime();
+				int old;
+				try {
+					old = minII.getMinII(graph, false);
+				} catch (NoSuchElementException e) {
+					// no cycles
+					old = 0;
+				}
+				line += "\t" + old + "\t" + String.format("%.2fms", (System.nanoTime() - start) / 1e6);
+			}
+			System.out.println(line);
+		}
+		System.out.println("Slowest RecMII:\t" + String.format("%.2fms", maxTime));
+	}
+
+	/**
+	 * Compares the exact retiming with the annealing (fixed seed) on the given
+	 * graph or on all graphs in the given directory: achieved II, cost and
+	 * runtime. The annealing runs with and without shifts greater than 1. The
+	 * exact II is optimal for the former and only a lower bound for the
+	 * latter, see {@link ExactRetiming}.
+	 * @param path - dot file or directory of dot files
+	 */
+	public static void exact(File path) {
+		int better = 0, equal = 0, worse = 0, boundReached = 0, boundMissed = 0, noMove = 0;
+		long exactTime = 0, saTime = 0;
+		System.out.println("Graph\tSize\tInit II\tExact II\tExact cost\tTime\tSA II\tSA cost\tTime\tSA II (shifts <= 1)");
+		for (File file : dotFiles(path)) {
+			Graph graph = new Dot_reader(true).parse(file.getPath());
+			SARetimingResultPackage ex = new ExactRetiming(graph).run(0);
+			SARetimingResultPackage sa;
+			try {
+				SARetiming engine = new SARetiming(graph);
+				engine.setSeed(1);
+				sa = engine.run(0);
+			} catch (IllegalArgumentException e) {
+				System.out.println(file.getName() + "\t" + graph.size() + "\t" + ex.initII + "\t" + ex.bestII + "\t" + ex.bestCost
+						+ "\t" + ex.wallclock + "ms\tSA failed: " + e.getMessage());
+				continue;
+			}
+			exactTime += ex.wallclock;
+			saTime += sa.wallclock;
+			if (ex.bestII < sa.bestII) {
+				better++;
+			} else if (ex.bestII == sa.bestII) {
+				equal++;
+			} else {
+				worse++;
+			}
+			String restricted;
+			try {
+				SARetiming engine = new SARetiming(graph);
+				engine.setSeed(1);
+				engine.setAllowShiftsGr1(false);
+				int ii = engine.run(0).bestII;
+				if (ii == ex.bestII) {
+					boundReached++;
+				} else {
+					boundMissed++;
+				}
+				restricted = Integer.toString(ii);
+			} catch (IllegalArgumentException e) {
+				noMove++;
+				restricted = "no legal move";
+			}
+			System.out.println(file.getName() + "\t" + graph.size() + "\t" + ex.initII
+					+ "\t" + ex.bestII + "\t" + ex.bestCost + "\t" + ex.wallclock + "ms"
+					+ "\t" + sa.bestII + "\t" + sa.bestCost + "\t" + sa.wallclock + "ms" + "\t" + restricted);
+		}
+		System.out.println("Exact II better than SA:\t" + better);
+		System.out.println("Exact II equal to SA:\t\t" + equal);
+		System.out.println("Exact II worse than SA:\t\t" + worse);
+		System.out.println("The exact II ignores the move filter of SA without shifts greater than 1 and is only a lower bound there:");
+		System.out.println("  reached by SA (shifts <= 1):\t" + boundReached);
+		System.out.println("  missed by SA (shifts <= 1):\t" + boundMissed);
+		System.out.println("  no legal move at all:\t\t" + noMove);
+		System.out.println("Total runtime exact:\t\t" + ((float) exactTime / 1000f) + "s");
+		System.out.println("Total runtime SA:\t\t" + ((float) saTime / 1000f) + "s");
+	}
+
+	/**
+	 * Compares the shift sum of the exact retiming with the minimum shift sum
+	 * for the same II on the given graph or on all graphs in the given
+	 * directory. Both minimize over all retimings, i.e. they relax the move
+	 * filter of SA without shifts greater than 1, see {@link ExactRetiming}.
+	 * @param path - dot file or directory of dot files
+	 */
+	public static void registers(File path) {
+		long exactSum = 0, minSum = 0, minTime = 0;
+		System.out.println("Graph\tSize\tII\tInit sum\tExact sum\tMin sum\tRounds\tConstraints\tPivots\tTime");
+		for (File file : dotFiles(path)) {
+			Graph graph = new Dot_reader(true).parse(file.getPath());
+			SARetimingResultPackage ex = new ExactRetiming(graph).run(0);
+			MinRegisterRetiming engine = new MinRegisterRetiming(graph);
+			SARetimingResultPackage min = engine.run(ex.bestII, 0);
+			exactSum += ex.bestShiftSum;
+			minSum += min.bestShiftSum;
+			minTime += min.wallclock;
+			System.out.println(file.getName() + "\t" + graph.size() + "\t" + min.bestII
+					+ "\t" + min.initShiftSum + "\t" + ex.bestShiftSum + "\t" + min.bestShiftSum
+					+ "\t" + engine.getRounds() + "\t" + engine.getConstraints() + "\t" + engine.getPivots() + "\t" + min.wallclock + "ms");
+		}
+		System.out.println("Total shift sum exact:\t\t" + exactSum);
+		System.out.println("Total shift sum minimum:\t" + minSum);
+		System.out.println("Total runtime minimum:\t\t" + ((float) minTime / 1000f) + "s");
+		System.out.println("Both sums are over all retimings, for SA without shifts greater than 1 they are only lower bounds");
+	}
+
+	/**
+	 * Compares {@link Dot_reader} with the line-wise regular expression parser
+	 * it replaced on the given graph or on all graphs in the given directory.
+	 * The time is the fastest of the given
+	 * number of runs after as many warm up runs.
+	 * @param path - dot file or directory of dot files
+	 * @param runs - number of measured runs per file and parser
+	 */
+	public static void parse(File path, int runs) {
+		long totalRegex = 0, totalReader = 0;
+		System.out.println("Graph\tSize\tRegex\tDot_reader\tSpeedup");
+		try {
+			for (File file : dotFiles(path)) {
+				String fn = file.getPath();
+				long regex = Long.MAX_VALUE, reader = Long.MAX_VALUE;
+				Graph graph = null;
+				for (int run = 0; run < 2 * runs; run++) {
+					long start = System.nanoTime();
+					parseRegex(fn, true);
+					long middle = System.nanoTime();
+					graph = new Dot_reader(true).parse(fn);
+					long end = System.nanoTime();
+					if (run >= runs) {
+						regex = Math.min(regex, middle - start);
+						reader = Math.min(reader, end - middle);
+					}
+				}
+				totalRegex += regex;
+				totalReader += reader;
+				System.out.println(file.getName() + "\t" + graph.size()
+						+ "\t" + String.format("%.3fms", regex / 1e6) + "\t" + String.format("%.3fms", reader / 1e6)
+						+ "\t" + String.format("%.1f", (double) regex / reader));
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		System.out.println("Total regex:\t\t" + String.format("%.3fms", totalRegex / 1e6));
+		System.out.println("Total Dot_reader:\t" + String.format("%.3fms", totalReader / 1e6));
+		System.out.println("Speedup:\t\t" + String.format("%.1f", (double) totalRegex / totalReader));
+	}
+
+	/**
+	 * Compares parsing with {@link Dot_reader} and loading from the
+	 * {@link GraphCache} in a temporary cache directory on the given graph or
+	 * on all graphs in the given directory. The first load of each file builds its cache file, the time is the
+	 * fastest of the given number of runs after as many warm up runs.
+	 * @param path - dot file or directory of dot files
+	 * @param runs - number of measured runs per file
+	 */
+	public static void cache(File path, int runs) {
+		long totalParse = 0, totalLoad = 0, totalBuild = 0;
+		File directory;
+		try {
+			directory = java.nio.file.Files.createTempDirectory("graphcache").toFile();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		GraphCache cache = new GraphCache(directory.getPath(), true);
+		System.out.println("Graph\tSize\tParse\tBuild\tLoad\tSpeedup");
+		for (File file : dotFiles(path)) {
+			String fn = file.getPath();
+			long start = System.nanoTime();
+			cache.load(fn);
+			long build = System.nanoTime() - start;
+			long parse = Long.MAX_VALUE, load = Long.MAX_VALUE;
+			Graph graph = null;
+			for (int run = 0; run < 2 * runs; run++) {
+				start = System.nanoTime();
+				new Dot_reader(true).parse(fn);
+				long middle = System.nanoTime();
+				graph = cache.load(fn);
+				long end = System.nanoTime();
+				if (run >= runs) {
+					parse = Math.min(parse, middle - start);
+					load = Math.min(load, end - middle);
+				}
+			}
+			totalParse += parse;
+			totalLoad += load;
+			totalBuild += build;
+			System.out.println(file.getName() + "\t" + graph.size()
+					+ "\t" + String.format("%.3fms", parse / 1e6) + "\t" + String.format("%.3fms", build / 1e6)
+					+ "\t" + String.format("%.3fms", load / 1e6)
+					+ "\t" + String.format("%.1f", (double) parse / load));
+			cache.cacheFile(fn).delete();
+		}
+		directory.delete();
+		System.out.println("Total parse:\t\t" + String.format("%.3fms", totalParse / 1e6));
+		System.out.println("Total cache build:\t" + String.format("%.3fms", totalBuild / 1e6));
+		System.out.println("Total cache load:\t" + String.format("%.3fms", totalLoad / 1e6));
+		System.out.println("Cache hits:\t\t" + cache.getHits() + ", misses: " + cache.getMisses());
+	}
+
+	/**
+	 * Runs a seeded annealing through a {@link ResultCache} in a temporary
+	 * directory on the given graph or on all graphs in the given directory,
+	 * once with an empty cache and once with a new engine of the same
+	 * settings, which is a hit.
+	 * @param path - dot file or directory of dot files
+	 */
+	public static void results(File path) {
+		long totalCold = 0, totalWarm = 0;
+		File directory;
+		try {
+			directory = java.nio.file.Files.createTempDirectory("resultcache").toFile();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		ResultCache cache = new ResultCache(directory.getPath(), ResultCache.DEFAULT_MAX_BYTES);
+		System.out.println("Graph\tSize\tII\tShift sum\tCold\tWarm\tSpeedup");
+		for (File file : dotFiles(path)) {
+			Graph graph = new Dot_reader(true).parse(file.getPath());
+			SARetiming sa = new SARetiming(graph);
+			sa.setSeed(1);
+			long start = System.nanoTime();
+			cache.run(sa, 0);
+			long middle = System.nanoTime();
+			sa = new SARetiming(graph);
+			sa.setSeed(1);
+			SARetimingResultPackage warm = cache.run(sa, 0);
+			long end = System.nanoTime();
+			totalCold += middle - start;
+			totalWarm += end - middle;
+			System.out.println(file.getName() + "\t" + graph.size() + "\t" + warm.bestII + "\t" + warm.bestShiftSum
+					+ "\t" + String.format("%.3fms", (middle - start) / 1e6) + "\t" + String.format("%.3fms", (end - middle) / 1e6)
+					+ "\t" + String.format("%.1f", (double) (middle - start) / (end - middle)));
+		}
+		File[] entries = directory.listFiles();
+		if (entries != null) {
+			for (File entry : entries) {
+				entry.delete();
+			}
+		}
+		directory.delete();
+		System.out.println("Total cold:\t" + String.format("%.3fms", totalCold / 1e6));
+		System.out.println("Total warm:\t" + String.format("%.3fms", totalWarm / 1e6));
+		System.out.println("Cache hits:\t" + cache.getHits() + ", misses: " + cache.getMisses());
+	}
+
+	/**
+	 * @param path - dot file or directory of dot files
+	 * @return the dot files of the directory by name, or the given file
+	 */
+	static List<File> dotFiles(File path) {
+		File[] files = path.isDirectory() ? path.listFiles() : new File[] { path };
+		if (files == null) {
+			throw new IllegalArgumentException("Cannot list " + path);
+		}
+		Arrays.sort(files);
+		List<File> result = new ArrayList<File>(files.length);
+		for (File file : files) {
+			if (file.isFile() && file.getName().endsWith(".dot")) {
+				result.add(file);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The line-wise regular expression parser Dot_reader used before, kept as
+	 * the baseline of {@link #parse(File, int)}.
+	 */
+	static Graph parseRegex(String fn, boolean readBackEdges) throws IOException {
+		Graph graph = new Graph();
+		Pattern pat_def = Pattern.compile("(\\w\\w*) (\\[.*\\]);.*");
+		Pattern pat_use = Pattern.compile("(\\w\\w*) -> (\\w\\w*);.*");
+		Pattern pat_itdep = Pattern.compile("(\\w\\w*) -> (\\w\\w*).*(\\[.*\\]);.*");
+		Matcher m;
+		BufferedReader input = new BufferedReader(new FileReader(fn));
+		try {
+			String line = input.readLine();
+			while (line != null) {
+				m = pat_def.matcher(line);
+				if (m.matches()) {
+					if (m.group(1).compareTo("node") != 0) {
+						Node n = new Node(m.group(1));
+						graph.add(n);
+						graph.get(n).setRT(RT.getRT(m.group(2)));
+					}
+				}
+				m = pat_use.matcher(line);
+				if (m.matches()) {
+					graph.link(new Node(m.group(1)), new Node(m.group(2)), 0);
+				}
+				if (readBackEdges) {
+					m = pat_itdep.matcher(line);
+					if (m.matches()) {
+						int it = Integer.parseInt(m.group(3).split("\"")[1]);
+						graph.link(new Node(m.group(1)), new Node(m.group(2)), it);
+					}
+				}
+				line = input.readLine();
+			}
+		} finally {
+			input.close();
+		}
+		return graph;
+	}
+
+}
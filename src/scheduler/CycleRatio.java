@@ -0,0 +1,290 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maximum cycle ratio of a graph: the maximum over all cycles of the sum of
+ * the node delays divided by the sum of the edge weights (iteration
+ * distances). Rounded up, this is the recurrence bound of the II (RecMII)
+ * that {@link minII#getMinII(Graph, boolean)} computes by enumerating all
+ * elementary cycles.
+ * <p>
+ * Howard's policy iteration is used. Nodes without successors are pruned
+ * first since they cannot lie on a cycle. Every remaining node chooses one
+ * outgoing edge (the policy), so each node leads to exactly one cycle of the
+ * policy graph. The value determination computes the ratio of that cycle
+ * and a potential for every node, the policy improvement switches nodes to
+ * edges leading to a higher ratio or potential. All values are exact: the
+ * ratio is kept as a reduced fraction num/den and the potentials are scaled
+ * by den, so they are integers.
+ * <p>
+ * The graph must not contain a cycle of zero weighted edges.
+ */
+public class CycleRatio {
+
+	private final RetimingGraph graph;
+	private long numerator;
+	private long denominator;
+	private int[] criticalCycle;
+	private int iterations;
+
+	public CycleRatio(Graph graph) {
+		this(new RetimingGraph(graph));
+	}
+
+	/**
+	 * @param graph - graph to analyse, only read
+	 * @throws IllegalArgumentException if the graph has a cycle of zero weighted edges
+	 */
+	public CycleRatio(RetimingGraph graph) {
+		this.graph = graph;
+		// throws on cycles of zero weighted edges, their ratio would be infinite
+		graph.longestZeroWeightedPath();
+		solve();
+	}
+
+	/**
+	 * @return numerator of the maximum cycle ratio as a reduced fraction
+	 */
+	public long getNumerator() {
+		return numerator;
+	}
+
+	/**
+	 * @return denominator of the maximum cycle ratio as a reduced fraction, 1 for an acyclic graph
+	 */
+	public long getDenominator() {
+		return denominator;
+	}
+
+	public double getRatio() {
+		return (double) numerator / (double) denominator;
+	}
+
+	/**
+	 * @return the recurrence constrained minimum II, 0 for an acyclic graph
+	 */
+	public int getRecMII() {
+		return (int) ((numerator + denominator - 1) / denominator);
+	}
+
+	/**
+	 * @return the nodes of a cycle with maximum ratio in edge order, empty for an acyclic graph
+	 */
+	public List<Node> getCriticalCycle() {
+		List<Node> cycle = new ArrayList<Node>(criticalCycle.length);
+		for (int v : criticalCycle) {
+			cycle.add(graph.node(v));
+		}
+		return cycle;
+	}
+
+	/**
+	 * @return number of policy iterations that were needed
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	private void solve() {
+		int n = graph.size();
+		int[] outStart = graph.outStart;
+		int[] target = graph.target;
+		int[] weight = graph.weight;
+		int[] delay = graph.delay;
+
+		// prune nodes that cannot reach a cycle
+		boolean[] active = new boolean[n];
+		int[] outDegree = new int[n];
+		int[] queue = new int[n];
+		int tail = 0;
+		for (int v = 0; v < n; v++) {
+			active[v] = true;
+			outDegree[v] = outStart[v + 1] - outStart[v];
+			if (outDegree[v] == 0) {
+				active[v] = false;
+				queue[tail++] = v;
+			}
+		}
+		for (int head = 0; head < tail; head++) {
+			int v = queue[head];
+			for (int k = graph.inStart[v]; k < graph.inStart[v + 1]; k++) {
+				int u = graph.source[graph.inEdge[k]];
+				if (active[u] && --outDegree[u] == 0) {
+					active[u] = false;
+					queue[tail++] = u;
+				}
+			}
+		}
+
+		numerator = 0;
+		denominator = 1;
+		criticalCycle = new int[0];
+		if (tail == n) {
+			return;
+		}
+
+		// initial policy: the lightest edge to an active node
+		int[] policy = new int[n];
+		for (int v = 0; v < n; v++) {
+			if (!active[v]) {
+				continue;
+			}
+			policy[v] = -1;
+			for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+				if (active[target[e]] && (policy[v] < 0 || weight[e] < weight[policy[v]])) {
+					policy[v] = e;
+				}
+			}
+		}
+
+		long[] num = new long[n];
+		long[] den = new long[n];
+		long[] potential = new long[n];
+		int[] state = new int[n];
+		int[] walk = new int[n];
+		int[] cycleStart = new int[n];
+
+		while (true) {
+			iterations++;
+
+			// value determination
+			for (int v = 0; v < n; v++) {
+				state[v] = active[v] ? 0 : 2;
+			}
+			for (int s = 0; s < n; s++) {
+				if (state[s] != 0) {
+					continue;
+				}
+				int len = 0;
+				int v = s;
+				while (state[v] == 0) {
+					state[v] = 1;
+					walk[len++] = v;
+					v = target[policy[v]];
+				}
+				if (state[v] == 1) {
+					// new cycle, it starts at v
+					long cycleNum = 0, cycleDen = 0;
+					int u = v;
+					do {
+						cycleNum += delay[u];
+						cycleDen += weight[policy[u]];
+						u = target[policy[u]];
+					} while (u != v);
+					long g = gcd(cycleNum, cycleDen);
+					cycleNum /= g;
+					cycleDen /= g;
+					int first = len - 1;
+					while (walk[first] != v) {
+						first--;
+					}
+					num[v] = cycleNum;
+					den[v] = cycleDen;
+					potential[v] = 0;
+					cycleStart[v] = v;
+					for (int k = len - 1; k > first; k--) {
+						u = walk[k];
+						int e = policy[u];
+						num[u] = cycleNum;
+						den[u] = cycleDen;
+						potential[u] = cycleDen * delay[u] - cycleNum * weight[e] + potential[target[e]];
+						cycleStart[u] = v;
+					}
+					for (int k = first; k < len; k++) {
+						state[walk[k]] = 2;
+					}
+					len = first;
+				}
+				// path into an evaluated part of the policy graph
+				for (int k = len - 1; k >= 0; k--) {
+					int u = walk[k];
+					int e = policy[u];
+					int t = target[e];
+					num[u] = num[t];
+					den[u] = den[t];
+					potential[u] = den[u] * delay[u] - num[u] * weight[e] + potential[t];
+					cycleStart[u] = cycleStart[t];
+					state[u] = 2;
+				}
+			}
+
+			// policy improvement, first by ratio
+			boolean changed = false;
+			for (int u = 0; u < n; u++) {
+				if (!active[u]) {
+					continue;
+				}
+				int best = policy[u];
+				for (int e = outStart[u]; e < outStart[u + 1]; e++) {
+					int t = target[e];
+					int b = target[best];
+					if (active[t] && num[t] * den[b] > num[b] * den[t]) {
+						best = e;
+					}
+				}
+				if (best != policy[u] && num[target[best]] * den[u] > num[u] * den[target[best]]) {
+					policy[u] = best;
+					changed = true;
+				}
+			}
+			if (changed) {
+				continue;
+			}
+			// then by potential among edges to nodes with the same ratio
+			for (int u = 0; u < n; u++) {
+				if (!active[u]) {
+					continue;
+				}
+				int best = policy[u];
+				long bestValue = potential[u];
+				for (int e = outStart[u]; e < outStart[u + 1]; e++) {
+					int t = target[e];
+					if (active[t] && num[t] == num[u] && den[t] == den[u]) {
+						long value = den[u] * delay[u] - num[u] * weight[e] + potential[t];
+						if (value > bestValue) {
+							best = e;
+							bestValue = value;
+						}
+					}
+				}
+				if (best != policy[u]) {
+					policy[u] = best;
+					changed = true;
+				}
+			}
+			if (!changed) {
+				break;
+			}
+		}
+
+		int critical = -1;
+		for (int v = 0; v < n; v++) {
+			if (active[v] && (critical < 0 || num[v] * den[critical] > num[critical] * den[v])) {
+				critical = v;
+			}
+		}
+		numerator = num[critical];
+		denominator = den[critical];
+		int start = cycleStart[critical];
+		int length = 0;
+		int v = start;
+		do {
+			walk[length++] = v;
+			v = target[policy[v]];
+		} while (v != start);
+		criticalCycle = new int[length];
+		System.arraycopy(walk, 0, criticalCycle, 0, length);
+	}
+
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a == 0 ? 1 : a;
+	}
+
+}
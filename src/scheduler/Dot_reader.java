@@ -1,25 +1,30 @@
 package scheduler;
 
-import java.io.FileReader;
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 
 /**
  * Reads DOT-ish files. (see graphviz)
  * <p>
- * The reader works somewhat crude. It reads the file line-wise
- * expecting at most one expression per line. It distinguishes between two
- * types of expressions:
+ * The reader works somewhat crude. It reads the whole file into a byte
+ * buffer and tokenizes it in a single pass. Statements end with a ';', a
+ * line break or a brace, so there may be several statements per line. It
+ * distinguishes between two types of statements:
  * 1. NODE [.*];
- * 2. NODE1 -> NODE2;
+ * 2. NODE1 -> NODE2 [.*];
  * Where NODE, NODE1 and NODE2 are given by the following regular expression:
  * [a-zA-Z_0-9][a-zA-Z_0-9]*
- * Number 1 is a definition expression and adds a node to the graph.
- * Number 2 represents a directed link between two nodes. Nodes not previously
- * found in the graph are added when found in a link expression. (As they are
- * in DOT)
+ * Number 1 is a definition expression and adds a node to the graph with the
+ * resource type from its attribute list. A node statement without an
+ * attribute list is skipped. Number 2 represents a directed link between
+ * two nodes. Nodes not previously found in the graph are added when found
+ * in a link expression.
+ * (As they are in DOT) A link with an attribute list is a back edge, its
+ * iteration distance is the label. Back edges are only read if requested.
+ * All other statements (graph header, default attributes) are skipped.
  * <p>
  * Graphs must not be circular!
  * <p>
@@ -29,76 +34,367 @@ public class Dot_reader {
 //	private BufferedReader file_reader;
 	private Graph graph;
 	private boolean readBackEdges = false;
-	
+
+	/**
+	 * Open addressing table of the nodes read so far, looked up by the bytes
+	 * of their name
+	 */
+	private Node[] table;
+	private int tableSize;
+
+	private byte[] text;
+	private int line;
+
 	public Dot_reader(boolean readBackEdges) {
 		this.readBackEdges = readBackEdges;
 		graph = new Graph();
 	}
-	
-	private void lex(BufferedReader input) {
-		String line;
-		Pattern pat_def = Pattern.compile("(\\w\\w*) (\\[.*\\]);.*");
-		Pattern pat_use = Pattern.compile("(\\w\\w*) -> (\\w\\w*);.*");
-		Pattern pat_itdep = Pattern.compile("(\\w\\w*) -> (\\w\\w*).*(\\[.*\\]);.*");
-		Matcher m;
-		try {
-			line = input.readLine();
-			while (line != null) {
-			
-				/* new node */
-				m = pat_def.matcher(line);
-				if (m.matches()){
-					if (m.group(1).compareTo("node") != 0){
-						Node n = new Node(m.group(1));
-						graph.add(n);
-						//System.out.println("GROUP:\n" + m.group(2));
-						graph.get(n).setRT(RT.getRT(m.group(2)));
-					}
+
+	private void lex(byte[] text, int length) {
+		this.text = text;
+		table = new Node[1024];
+		tableSize = 0;
+		line = 1;
+
+		// current statement: up to two names, an arrow and an attribute list
+		int names = 0;
+		int firstStart = 0, firstEnd = 0, secondStart = 0, secondEnd = 0;
+		int attrStart = -1, attrEnd = -1;
+		boolean arrow = false;
+		boolean valid = true;
+
+		int pos = 0;
+		while (pos <= length) {
+			byte c = pos < length ? text[pos] : (byte) '\n';
+			if (isNameChar(c)) {
+				int start = pos;
+				while (pos < length && isNameChar(text[pos])) {
+					pos++;
 				}
-				/* link */
-				m = pat_use.matcher(line);
-				if (m.matches()){
-					if (graph.link(new Node(m.group(1)), new Node(m.group(2)),0) == null) {
-						System.err.printf("ERROR: Found circular graph%n");
-						System.exit(-1);
-					}
+				if (names == 0 && attrStart < 0) {
+					firstStart = start;
+					firstEnd = pos;
+					names = 1;
+				} else if (names == 1 && arrow && attrStart < 0) {
+					secondStart = start;
+					secondEnd = pos;
+					names = 2;
+				} else {
+					valid = false;
 				}
-				
-				if(readBackEdges){
-					m = pat_itdep.matcher(line);
-					if (m.matches()){
-						int it = Integer.parseInt(m.group(3).split("\"")[1]);
-						if (graph.link(new Node(m.group(1)), new Node(m.group(2)),it) == null) {
-							System.err.printf("ERROR: Found circular graph%n");
-							System.exit(-1);
-						}
+				continue;
+			}
+			switch (c) {
+			case ' ':
+			case '\t':
+			case '\r':
+				pos++;
+				break;
+			case '-':
+				if (pos + 1 < length && text[pos + 1] == '>' && names == 1 && !arrow && attrStart < 0) {
+					arrow = true;
+					pos += 2;
+				} else {
+					valid = false;
+					pos++;
+				}
+				break;
+			case '"':
+				pos = skipQuoted(pos + 1, length) + 1;
+				valid = false;
+				break;
+			case '/':
+				if (pos + 1 < length && text[pos + 1] == '/') {
+					while (pos < length && text[pos] != '\n') {
+						pos++;
 					}
+				} else if (pos + 1 < length && text[pos + 1] == '*') {
+					pos = skipComment(pos + 2, length);
+				} else {
+					valid = false;
+					pos++;
+				}
+				break;
+			case '[':
+				attrStart = pos + 1;
+				pos = skipAttributes(pos + 1, length);
+				attrEnd = pos;
+				pos++;
+				break;
+			case '\n':
+			case ';':
+			case '{':
+			case '}':
+				if (valid && names == 1 && !arrow && attrStart >= 0) {
+					define(firstStart, firstEnd, attrStart, attrEnd);
+				} else if (valid && names == 2) {
+					link(firstStart, firstEnd, secondStart, secondEnd, attrStart, attrEnd);
 				}
-				line = input.readLine();
+				names = 0;
+				attrStart = -1;
+				arrow = false;
+				valid = true;
+				if (c == '\n') {
+					line++;
+				}
+				pos++;
+				break;
+			default:
+				valid = false;
+				pos++;
+				break;
 			}
-		} catch (Throwable e) {
-			System.err.printf("FATAL: Could not read from input%n");
-			e.printStackTrace(System.err);
+		}
+		this.text = null;
+		table = null;
+	}
+
+	private static boolean isNameChar(byte c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+
+	/**
+	 * @return position of the ']' closing the attribute list starting at pos
+	 */
+	private int skipAttributes(int pos, int length) {
+		while (pos < length && text[pos] != ']') {
+			if (text[pos] == '"') {
+				pos = skipQuoted(pos + 1, length);
+			} else if (text[pos] == '\n') {
+				line++;
+			}
+			pos++;
+		}
+		if (pos >= length) {
+			fatal("Unterminated attribute list");
+		}
+		return pos;
+	}
+
+	/**
+	 * @return position after the end of the comment starting at pos
+	 */
+	private int skipComment(int pos, int length) {
+		while (pos + 1 < length && !(text[pos] == '*' && text[pos + 1] == '/')) {
+			if (text[pos] == '\n') {
+				line++;
+			}
+			pos++;
+		}
+		if (pos + 1 >= length) {
+			fatal("Unterminated comment");
+		}
+		return pos + 2;
+	}
+
+	/**
+	 * @return position of the '"' closing the string starting at pos
+	 */
+	private int skipQuoted(int pos, int length) {
+		while (pos < length && text[pos] != '"') {
+			if (text[pos] == '\\') {
+				pos++;
+			} else if (text[pos] == '\n') {
+				line++;
+			}
+			pos++;
+		}
+		if (pos >= length) {
+			fatal("Unterminated string");
+		}
+		return pos;
+	}
+
+	private void define(int start, int end, int attrStart, int attrEnd) {
+		if (isKeyword(start, end)) {
+			return;
+		}
+		Node node = lookup(start, end);
+		if (node == null) {
+			add(new Node(new String(text, start, end - start, StandardCharsets.ISO_8859_1), RT.getRT(text, attrStart, attrEnd)));
+		} else {
+			node.setRT(RT.getRT(text, attrStart, attrEnd));
+		}
+	}
+
+	private void link(int predStart, int predEnd, int succStart, int succEnd, int attrStart, int attrEnd) {
+		int it = 0;
+		if (attrStart >= 0) {
+			if (!readBackEdges) {
+				return;
+			}
+			it = label(attrStart, attrEnd);
+		}
+		Node pred = node(predStart, predEnd);
+		Node succ = node(succStart, succEnd);
+		if (graph.link(pred, succ, it) == null) {
+			System.err.printf("ERROR: Found circular graph%n");
 			System.exit(-1);
 		}
 	}
-	
+
+	/**
+	 * @return the node with the given name, added with the resource type of its name if it is new
+	 */
+	private Node node(int start, int end) {
+		Node node = lookup(start, end);
+		if (node == null) {
+			node = add(new Node(new String(text, start, end - start, StandardCharsets.ISO_8859_1), RT.getRT(text, start, end)));
+		}
+		return node;
+	}
+
+	/**
+	 * @return the integer value of the label attribute in text[start..end-1]
+	 */
+	private int label(int start, int end) {
+		int pos = start;
+		while (pos < end) {
+			while (pos < end && !isNameChar(text[pos])) {
+				if (text[pos] == '"') {
+					pos = skipQuoted(pos + 1, end);
+				}
+				pos++;
+			}
+			int keyStart = pos;
+			while (pos < end && isNameChar(text[pos])) {
+				pos++;
+			}
+			boolean isLabel = is(keyStart, pos, "label");
+			while (pos < end && (text[pos] == ' ' || text[pos] == '\t')) {
+				pos++;
+			}
+			if (pos == end || text[pos] != '=') {
+				continue;
+			}
+			pos++;
+			while (pos < end && (text[pos] == ' ' || text[pos] == '\t')) {
+				pos++;
+			}
+			boolean quoted = pos < end && text[pos] == '"';
+			int valueStart = quoted ? pos + 1 : pos;
+			int valueEnd = valueStart;
+			while (valueEnd < end && (quoted ? text[valueEnd] != '"' : isNameChar(text[valueEnd]))) {
+				valueEnd++;
+			}
+			if (isLabel) {
+				if (valueStart == valueEnd) {
+					fatal("Empty label");
+				}
+				int value = 0;
+				for (int k = valueStart; k < valueEnd; k++) {
+					if (text[k] < '0' || text[k] > '9') {
+						fatal("Label of a back edge is not a number");
+					}
+					value = 10 * value + (text[k] - '0');
+				}
+				return value;
+			}
+			pos = quoted ? valueEnd + 1 : valueEnd;
+		}
+		fatal("Back edge without label");
+		return 0;
+	}
+
+	private boolean isKeyword(int start, int end) {
+		return is(start, end, "node") || is(start, end, "edge") || is(start, end, "graph") || is(start, end, "digraph");
+	}
+
+	/**
+	 * @return true iff text[start..end-1] equals word
+	 */
+	private boolean is(int start, int end, String word) {
+		if (end - start != word.length()) {
+			return false;
+		}
+		for (int k = 0; k < word.length(); k++) {
+			if ((text[start + k] & 0xff) != word.charAt(k)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int hash(int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + (text[i] & 0xff);
+		}
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Same as {@link #hash(int, int)} for the bytes of id.
+	 */
+	private static int hash(String id) {
+		int h = id.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private Node lookup(int start, int end) {
+		int mask = table.length - 1;
+		for (int slot = hash(start, end) & mask; table[slot] != null; slot = (slot + 1) & mask) {
+			if (is(start, end, table[slot].id)) {
+				return table[slot];
+			}
+		}
+		return null;
+	}
+
+	private Node add(Node node) {
+		node = graph.add(node);
+		if (2 * (tableSize + 1) > table.length) {
+			Node[] old = table;
+			table = new Node[2 * old.length];
+			for (Node n : old) {
+				if (n != null) {
+					insert(n);
+				}
+			}
+		}
+		insert(node);
+		tableSize++;
+		return node;
+	}
+
+	private void insert(Node node) {
+		int mask = table.length - 1;
+		int slot = hash(node.id) & mask;
+		while (table[slot] != null) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = node;
+	}
+
+	private void fatal(String message) {
+		System.err.printf("FATAL: %s in line %d%n", message, line);
+		System.exit(-1);
+	}
+
 	/**
 	 * Parses the open stream.
 	 */
 	public Graph parse(String fn) {
-		BufferedReader file_reader;
-		
-		graph = new Graph();
-		
+		byte[] content = null;
 		try {
-			file_reader = new BufferedReader(new FileReader(fn));
-			lex(file_reader);
-		} catch (FileNotFoundException e) {
+			content = Files.readAllBytes(Paths.get(fn));
+		} catch (NoSuchFileException e) {
 			System.err.printf("FATAL: File not found: %s%n", fn);
 			System.exit(-1);
+		} catch (IOException e) {
+			System.err.printf("FATAL: Could not read from input%n");
+			e.printStackTrace(System.err);
+			System.exit(-1);
 		}
-		
+		return parse(content);
+	}
+
+	/**
+	 * Parses the content of a DOT file.
+	 */
+	public Graph parse(byte[] content) {
+		graph = new Graph();
+		lex(content, content.length);
 		return graph;
 	}
 }
@@ -42,10 +42,10 @@ public class ElementaryCyclesSearch {
 		while(true) {
 			SCCResult sccResult = sccs.getAdjacencyList(s);
 			if (sccResult != null && sccResult.getAdjList() != null) {
-				Vector<Integer>[] scc = sccResult.getAdjList();
+				int[][] scc = sccResult.getAdjList();
 				s = sccResult.getLowestNodeId();
 				for (int j = 0; j < scc.length; j++) {
-					if ((scc[j] != null) && (scc[j].size() > 0)) {
+					if (scc[j].length > 0) {
 						this.blocked[j] = false;
 						this.B[j] = new Vector<Integer>();
 					}
@@ -61,13 +61,13 @@ public class ElementaryCyclesSearch {
 		return this.cycles;
 	}
 
-	private boolean findCycles(int v, int s, Vector<Integer>[] adjList) {
+	private boolean findCycles(int v, int s, int[][] adjList) {
 		boolean f = false;
 		this.stack.add(new Integer(v));
 		this.blocked[v] = true;
 		
-		for (int i = 0; i < adjList[v].size(); i++) {
-			int w = ((Integer) adjList[v].get(i)).intValue();
+		for (int i = 0; i < adjList[v].length; i++) {
+			int w = adjList[v][i];
 			//found cycle
 			if (w == s) {
 				Vector<Node> cycle = new Vector<Node>();
@@ -87,8 +87,8 @@ public class ElementaryCyclesSearch {
 		if(f) {
 			this.unblock(v);
 		} else {
-			for (int i = 0; i < adjList[v].size(); i++) {
-				int w = ((Integer) adjList[v].get(i)).intValue();
+			for (int i = 0; i < adjList[v].length; i++) {
+				int w = adjList[v][i];
 				if (!this.B[w].contains(new Integer(v))) {
 					this.B[w].add(new Integer(v));
 				}
@@ -0,0 +1,124 @@
+package scheduler;
+
+/**
+ * Decides when the annealing has reached equilibrium at the current
+ * temperature.
+ * <p>
+ * The moves of a temperature level are split into consecutive windows of a
+ * fixed number of moves. For every window the acceptance rate, the minimum
+ * and the mean and variance of the cost of the current solution are
+ * collected. A window is stable if compared to the window before it
+ * <ul>
+ * <li>it did not reach a lower cost than all earlier windows of the level,</li>
+ * <li>the means differ by at most MEAN_TOLERANCE standard deviations and</li>
+ * <li>the acceptance rates are about the same.</li>
+ * </ul>
+ * The level is in equilibrium after STABLE_WINDOWS stable windows in a row.
+ * The minimum matters because the retiming cost is dominated by the integer
+ * II: the chain mostly walks on plateaus and still finds a lower II after
+ * the mean and variance look settled.
+ */
+public class EquilibriumDetector {
+
+	/**
+	 * Allowed difference of the mean cost of two windows, in standard deviations
+	 */
+	public static final double MEAN_TOLERANCE = 2;
+	/**
+	 * Allowed difference of the acceptance rate of two windows: absolute plus relative part
+	 */
+	public static final double ACCEPTANCE_TOLERANCE = .02;
+	public static final double ACCEPTANCE_RELATIVE_TOLERANCE = .1;
+	/**
+	 * Number of stable windows in a row that make an equilibrium
+	 */
+	public static final int STABLE_WINDOWS = 3;
+
+	private final int window;
+
+	private int count;
+	private int accepted;
+	private double sum;
+	private double sumSquares;
+	private float min;
+
+	private boolean hasPrevious;
+	private double previousMean;
+	private double previousVariance;
+	private double previousAcceptance;
+	private float previousMin;
+	private int stableWindows;
+
+	/**
+	 * @param window - number of moves per window
+	 */
+	public EquilibriumDetector(int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Window must contain at least one move");
+		}
+		this.window = window;
+	}
+
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Forgets all windows, to be called at the start of each temperature level.
+	 */
+	public void reset() {
+		count = 0;
+		accepted = 0;
+		sum = 0;
+		sumSquares = 0;
+		min = Float.MAX_VALUE;
+		hasPrevious = false;
+		stableWindows = 0;
+	}
+
+	/**
+	 * Records one move.
+	 * @param cost - cost of the current solution after the move
+	 * @param accept - true iff the move was accepted
+	 * @return true iff this move completed a window and the level is in equilibrium
+	 */
+	public boolean add(float cost, boolean accept) {
+		count++;
+		if (accept) {
+			accepted++;
+		}
+		sum += cost;
+		sumSquares += (double) cost * cost;
+		if (cost < min) {
+			min = cost;
+		}
+		if (count < window) {
+			return false;
+		}
+
+		double mean = sum / count;
+		double variance = Math.max(sumSquares / count - mean * mean, 0);
+		double acceptance = (double) accepted / count;
+		boolean stable = false;
+		if (hasPrevious) {
+			double deviation = Math.sqrt(Math.max(variance, previousVariance));
+			stable = min >= previousMin
+					&& Math.abs(mean - previousMean) <= MEAN_TOLERANCE * deviation + 1e-9
+					&& Math.abs(acceptance - previousAcceptance) <= ACCEPTANCE_TOLERANCE + ACCEPTANCE_RELATIVE_TOLERANCE * previousAcceptance;
+		}
+		stableWindows = stable ? stableWindows + 1 : 0;
+		boolean equilibrium = stableWindows >= STABLE_WINDOWS;
+		previousMin = hasPrevious ? Math.min(min, previousMin) : min;
+		hasPrevious = true;
+		previousMean = mean;
+		previousVariance = variance;
+		previousAcceptance = acceptance;
+		count = 0;
+		accepted = 0;
+		sum = 0;
+		sumSquares = 0;
+		min = Float.MAX_VALUE;
+		return equilibrium;
+	}
+
+}
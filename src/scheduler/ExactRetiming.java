@@ -0,0 +1,145 @@
+package scheduler;
+
+import java.util.Arrays;
+
+import scheduler.SARetiming.SARetimingResultPackage;
+import scheduler.SARetiming.StopReason;
+
+/**
+ * Retiming with the minimum achievable II by the algorithm of Leiserson and
+ * Saxe.
+ * <p>
+ * FEAS decides whether a retiming with II (clock period) c exists: starting
+ * from the original graph, every node whose arrival time (longest zero
+ * weighted path ending in it) exceeds c is shifted by one iteration, i.e.
+ * all its incoming edges get one more iteration distance and all outgoing
+ * edges one less. This keeps all edge weights non-negative. If c is
+ * feasible at all, the II is at most c after size() - 1 rounds.
+ * <p>
+ * The optimal II is found by binary search over the integers between the
+ * lower bound of {@link SARetiming} (largest node delay and RecMII) and the
+ * II of the original graph. The result is deterministic and provably
+ * optimal with respect to the II; the shift sum is whatever FEAS leaves.
+ * <p>
+ * Optimal means optimal over all retimings, which are exactly the graphs
+ * {@link SARetiming} can reach with allowShiftsGr1 set (its default).
+ * {@link SARetiming#LOOSE_NODE_SHIFT_MAX} only limits the shift of a loose
+ * node per move, so it does not restrict the reachable retimings. Without
+ * shifts greater than 1, however, the annealer rejects every move that
+ * raises the largest edge weight around a node above max(that weight, 1).
+ * What it can reach then depends on the order of the moves and is no set of
+ * constraints on the retiming. For that mode the II found here is a lower
+ * bound that the annealer may not reach, not its optimum.
+ */
+public class ExactRetiming {
+
+	private final RetimingGraph initRetimingGraph;
+	private int[] bestRetiming;
+
+	public ExactRetiming(Graph graph) {
+		initRetimingGraph = new RetimingGraph(graph);
+	}
+
+	/**
+	 * @return the retiming of the last result, relative to the input graph
+	 */
+	public int[] getBestRetiming() {
+		return bestRetiming;
+	}
+
+	public SARetimingResultPackage run(int print) {
+		long startTime = System.currentTimeMillis();
+		int initII = SARetiming.longestZeroWeightedPath(initRetimingGraph);
+		int lowerBound = SARetiming.lowerBound(initRetimingGraph);
+		if (print >= 1) {
+			System.out.println("Initial Achieved II = " + initII + ". Lower bound = " + lowerBound);
+		}
+
+		int n = initRetimingGraph.size();
+		int[] arrival = new int[n];
+		int[] order = new int[n];
+		int[] probeRounds = new int[32];
+		int probes = 0;
+		long rounds = 0;
+
+		RetimingGraph best = initRetimingGraph;
+		int low = lowerBound, high = initII;
+		while (low < high) {
+			int period = low + (high - low) / 2;
+			RetimingGraph graph = new RetimingGraph(initRetimingGraph);
+			int used = feasible(graph, period, arrival, order);
+			boolean feasible = used >= 0;
+			if (probes == probeRounds.length) {
+				probeRounds = Arrays.copyOf(probeRounds, 2 * probes);
+			}
+			probeRounds[probes++] = Math.abs(used);
+			rounds += Math.abs(used);
+			if (print >= 1) {
+				System.out.println("\tII " + period + (feasible ? " feasible" : " infeasible") + " after " + Math.abs(used) + " rounds");
+			}
+			if (feasible) {
+				best = graph;
+				high = period;
+			} else {
+				low = period + 1;
+			}
+		}
+		long wallclock = System.currentTimeMillis() - startTime;
+
+		bestRetiming = new int[n];
+		best.copyRetiming(bestRetiming);
+		int bestII = SARetiming.longestZeroWeightedPath(best);
+		if (print >= 1) {
+			System.out.println("\n\nOptimal II:\t" + bestII + " (" + probes + " FEAS runs, " + rounds + " rounds)\n");
+		}
+
+		float initCost = SARetiming.getGraphCost(initRetimingGraph);
+		float bestCost = SARetiming.getGraphCost(best);
+		int initSum = SARetiming.shiftSum(initRetimingGraph), bestSum = SARetiming.shiftSum(best);
+		int initMax = SARetiming.shiftMax(initRetimingGraph), bestMax = SARetiming.shiftMax(best);
+		return new SARetimingResultPackage(best.toGraph(), hasLooseNodes(initRetimingGraph), SARetiming.LOOSE_NODE_SHIFT_MAX,
+				wallclock, 0, 0,
+				initII, Math.max(initII, bestII), bestII, bestII,
+				initSum, Math.max(initSum, bestSum), bestSum, bestSum,
+				initMax, Math.max(initMax, bestMax), bestMax, bestMax,
+				initCost, Math.max(initCost, bestCost), bestCost, bestCost,
+				rounds, lowerBound, StopReason.OPTIMAL, Arrays.copyOf(probeRounds, probes));
+	}
+
+	/**
+	 * FEAS: retimes graph in place towards an II of at most period.
+	 * @param graph - graph to retime, must be the unretimed input graph
+	 * @param period - II to reach
+	 * @param arrival - scratch array of size() elements
+	 * @param order - scratch array of size() elements
+	 * @return the number of rounds if period was reached, minus the number of rounds otherwise
+	 */
+	static int feasible(RetimingGraph graph, int period, int[] arrival, int[] order) {
+		int n = graph.size();
+		for (int round = 0; round < n; round++) {
+			if (graph.arrivalTimes(arrival, order) <= period) {
+				return round;
+			}
+			// successors first, so a zero weighted edge between two shifted
+			// nodes is raised before it is lowered and never gets negative
+			for (int k = n - 1; k >= 0; k--) {
+				int v = order[k];
+				if (arrival[v] > period) {
+					graph.shift(v, 1);
+				}
+			}
+		}
+		return graph.arrivalTimes(arrival, order) <= period ? n : -n;
+	}
+
+	static boolean hasLooseNodes(RetimingGraph graph) {
+		for (int v = 0; v < graph.size(); v++) {
+			if (graph.inStart[v] == graph.inStart[v + 1]
+					|| graph.outStart[v] == graph.outStart[v + 1]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,359 @@
+package scheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of parsed DOT files in a compact binary format.
+ * <p>
+ * For every DOT file a cache file is kept in the cache directory, named
+ * after the DOT file and a hash of its canonical path, so DOT files of the
+ * same name in different directories get different cache files. It holds
+ * the size, modification time and SHA-256 hash of the DOT file it was built
+ * from, the node ids and resource types and the edges in compressed sparse
+ * row form:
+ * <pre>
+ * int magic, int version, byte readBackEdges,
+ * long size, long modified, byte[32] hash,
+ * int n, int m, int idBytes,
+ * byte[n] RT ordinal, int[n + 1] idStart, byte[idBytes] ids,
+ * int[n + 1] outStart, int[m] target, int[m] weight
+ * </pre>
+ * {@link #load(String)} maps the cache file with a read only
+ * {@link FileChannel}. If the size and modification time of the DOT file
+ * match, the graph is read without touching the DOT file. Otherwise the DOT
+ * file is read and hashed: if the content is unchanged, the graph is read
+ * from the cache file and the cache file gets the new time stamp, else the
+ * DOT file is parsed by {@link Dot_reader} and the cache file is written
+ * again. Like make, this misses an edit that keeps the size and the
+ * modification time. Cache files are written to a temporary file and moved
+ * into place, so several processes may share one cache directory.
+ * <p>
+ * The nodes are stored in the iteration order of the parsed graph and the
+ * edges in the iteration order of the successors, so the loaded graph
+ * iterates in the same order and gives the same RetimingGraph numbering.
+ * <p>
+ * Caching is opt-in: {@link #GraphCache(boolean)} only caches if the system
+ * property {@value #DIRECTORY_PROPERTY} names the cache directory
+ * (e.g. -Dscheduler.graphCache=cache), otherwise {@link #load(String)} just
+ * parses the DOT file.
+ */
+public class GraphCache {
+
+	public static final String DIRECTORY_PROPERTY = "scheduler.graphCache";
+
+	private static final int MAGIC = 0x52474331;
+	private static final int VERSION = 2;
+	private static final int HASH_BYTES = 32;
+
+	// null if caching is off
+	private final File directory;
+	private final boolean readBackEdges;
+	private int hits;
+	private int misses;
+
+	/**
+	 * Cache in the directory given by the system property
+	 * {@value #DIRECTORY_PROPERTY}, no caching if it is not set.
+	 * @param readBackEdges - passed to {@link Dot_reader}
+	 */
+	public GraphCache(boolean readBackEdges) {
+		this(System.getProperty(DIRECTORY_PROPERTY), readBackEdges);
+	}
+
+	/**
+	 * @param directory - directory of the cache files, created if needed, null for no caching
+	 * @param readBackEdges - passed to {@link Dot_reader}
+	 */
+	public GraphCache(String directory, boolean readBackEdges) {
+		this.directory = directory == null || directory.isEmpty() ? null : new File(directory);
+		this.readBackEdges = readBackEdges;
+	}
+
+	/**
+	 * @return number of graphs loaded from a valid cache file
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of graphs that had to be parsed
+	 */
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Loads the graph of the given DOT file, from the cache file if it is up
+	 * to date.
+	 * @param fn - DOT file
+	 * @return the graph
+	 */
+	public Graph load(String fn) {
+		if (directory == null) {
+			misses++;
+			return new Dot_reader(readBackEdges).parse(fn);
+		}
+		Path path = Paths.get(fn);
+		File cacheFile = cacheFile(fn);
+		long size = 0, modified = 0;
+		byte[] content = null;
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			size = attributes.size();
+			modified = attributes.lastModifiedTime().toMillis();
+			Graph graph = read(cacheFile, size, modified, null);
+			if (graph != null) {
+				hits++;
+				return graph;
+			}
+			content = Files.readAllBytes(path);
+		} catch (NoSuchFileException e) {
+			System.err.printf("FATAL: File not found: %s%n", fn);
+			System.exit(-1);
+		} catch (IOException e) {
+			System.err.printf("FATAL: Could not read from input%n");
+			e.printStackTrace(System.err);
+			System.exit(-1);
+		}
+
+		// size or modification time changed, compare the content
+		byte[] hash = hash(content);
+		Graph graph = read(cacheFile, size, modified, hash);
+		if (graph != null) {
+			hits++;
+		} else {
+			misses++;
+			graph = new Dot_reader(readBackEdges).parse(content);
+		}
+		try {
+			write(cacheFile, graph, size, modified, hash);
+		} catch (IOException e) {
+			System.err.println("WARNING: Could not write graph cache " + cacheFile + ": " + e.getMessage());
+		}
+		return graph;
+	}
+
+	/**
+	 * @return the cache file of the given DOT file, null if caching is off
+	 */
+	public File cacheFile(String fn) {
+		if (directory == null) {
+			return null;
+		}
+		File file = new File(fn);
+		String name = file.getName();
+		if (name.endsWith(".dot")) {
+			name = name.substring(0, name.length() - 4);
+		}
+		String canonical;
+		try {
+			canonical = file.getCanonicalPath();
+		} catch (IOException e) {
+			canonical = file.getAbsolutePath();
+		}
+		String pathHash = ResultCache.hex(Arrays.copyOf(hash(canonical.getBytes(StandardCharsets.UTF_8)), 8));
+		return new File(directory, name + "." + pathHash + (readBackEdges ? ".graph" : ".forward.graph"));
+	}
+
+	/**
+	 * @param size - size of the DOT file
+	 * @param modified - modification time of the DOT file
+	 * @param hash - hash of the content of the DOT file, null to only compare size and modification time
+	 * @return the graph stored in the cache file, null if the file is missing, broken or not built from the DOT file
+	 */
+	private Graph read(File cacheFile, long size, long modified, byte[] hash) {
+		if (!cacheFile.isFile()) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || (buffer.get() != 0) != readBackEdges) {
+				return null;
+			}
+			long storedSize = buffer.getLong();
+			long storedModified = buffer.getLong();
+			byte[] storedHash = new byte[HASH_BYTES];
+			buffer.get(storedHash);
+			if (hash == null ? storedSize != size || storedModified != modified : !Arrays.equals(storedHash, hash)) {
+				return null;
+			}
+			return readGraph(buffer);
+		} catch (IOException e) {
+			return null;
+		} catch (BufferUnderflowException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			// broken file, see readGraph
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the graph part of a cache file. Every count, offset, index and
+	 * type read is checked, so a broken or foreign file is rejected instead
+	 * of failing with an unchecked exception.
+	 * @throws IllegalArgumentException if the file is broken
+	 */
+	private static Graph readGraph(ByteBuffer buffer) {
+		int n = buffer.getInt();
+		int m = buffer.getInt();
+		int idBytes = buffer.getInt();
+		// every node takes at least 9 bytes, every edge 8
+		if (n < 0 || m < 0 || idBytes < 0 || (long) 9 * n + 8L * m + idBytes + 8 > buffer.remaining()) {
+			throw new IllegalArgumentException("Sizes do not match the file");
+		}
+		RT[] types = RT.values();
+		byte[] rt = new byte[n];
+		buffer.get(rt);
+		int[] idStart = new int[n + 1];
+		buffer.asIntBuffer().get(idStart);
+		buffer.position(buffer.position() + 4 * (n + 1));
+		byte[] ids = new byte[idBytes];
+		buffer.get(ids);
+		int[] outStart = new int[n + 1];
+		buffer.asIntBuffer().get(outStart);
+		buffer.position(buffer.position() + 4 * (n + 1));
+		int[] target = new int[m];
+		buffer.asIntBuffer().get(target);
+		buffer.position(buffer.position() + 4 * m);
+		int[] weight = new int[m];
+		buffer.asIntBuffer().get(weight);
+		buffer.position(buffer.position() + 4 * m);
+		if (buffer.hasRemaining()) {
+			throw new IllegalArgumentException("Trailing bytes");
+		}
+		checkOffsets(idStart, idBytes);
+		checkOffsets(outStart, m);
+
+		Graph graph = new Graph();
+		Node[] nodes = new Node[n];
+		for (int v = 0; v < n; v++) {
+			if (rt[v] < 0 || rt[v] >= types.length) {
+				throw new IllegalArgumentException("Unknown resource type " + rt[v]);
+			}
+			String id = new String(ids, idStart[v], idStart[v + 1] - idStart[v], StandardCharsets.ISO_8859_1);
+			nodes[v] = graph.add(new Node(id, types[rt[v]]));
+		}
+		if (graph.size() != n) {
+			throw new IllegalArgumentException("Duplicate node ids");
+		}
+		for (int v = 0; v < n; v++) {
+			for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+				if (target[e] < 0 || target[e] >= n || weight[e] < 0) {
+					throw new IllegalArgumentException("Illegal edge " + e);
+				}
+				if (graph.link(nodes[v], nodes[target[e]], weight[e]) == null) {
+					throw new IllegalArgumentException("Circular graph");
+				}
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * @throws IllegalArgumentException unless offsets starts at 0, does not decrease and ends at end
+	 */
+	private static void checkOffsets(int[] offsets, int end) {
+		if (offsets[0] != 0 || offsets[offsets.length - 1] != end) {
+			throw new IllegalArgumentException("Offsets out of range");
+		}
+		for (int k = 1; k < offsets.length; k++) {
+			if (offsets[k] < offsets[k - 1]) {
+				throw new IllegalArgumentException("Offsets out of order");
+			}
+		}
+	}
+
+	private void write(File cacheFile, Graph graph, long size, long modified, byte[] hash) throws IOException {
+		int n = graph.size();
+		Node[] nodes = new Node[n];
+		Map<Node, Integer> index = new HashMap<Node, Integer>((int) (n * 1.5f));
+		byte[][] ids = new byte[n][];
+		int v = 0, m = 0, idBytes = 0;
+		for (Node node : graph) {
+			nodes[v] = node;
+			index.put(node, v);
+			ids[v] = node.id.getBytes(StandardCharsets.ISO_8859_1);
+			idBytes += ids[v].length;
+			m += node.allSuccessors().size();
+			v++;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + 1 + 2 * 8 + HASH_BYTES + 3 * 4 + n + 4 * (n + 1) + idBytes + 4 * (n + 1) + 8 * m);
+		buffer.putInt(MAGIC).putInt(VERSION).put((byte) (readBackEdges ? 1 : 0));
+		buffer.putLong(size).putLong(modified).put(hash);
+		buffer.putInt(n).putInt(m).putInt(idBytes);
+		for (v = 0; v < n; v++) {
+			buffer.put((byte) nodes[v].getRT().ordinal());
+		}
+		int offset = 0;
+		for (v = 0; v < n; v++) {
+			buffer.putInt(offset);
+			offset += ids[v].length;
+		}
+		buffer.putInt(offset);
+		for (v = 0; v < n; v++) {
+			buffer.put(ids[v]);
+		}
+		int[] target = new int[m];
+		int[] weight = new int[m];
+		int e = 0;
+		for (v = 0; v < n; v++) {
+			buffer.putInt(e);
+			for (Map.Entry<Node, Integer> edge : nodes[v].allSuccessors().entrySet()) {
+				target[e] = index.get(edge.getKey());
+				weight[e] = edge.getValue();
+				e++;
+			}
+		}
+		buffer.putInt(e);
+		for (e = 0; e < m; e++) {
+			buffer.putInt(target[e]);
+		}
+		for (e = 0; e < m; e++) {
+			buffer.putInt(weight[e]);
+		}
+		buffer.flip();
+
+		Files.createDirectories(directory.toPath());
+		Path temp = Files.createTempFile(directory.toPath(), cacheFile.getName(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			Files.move(temp, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static byte[] hash(byte[] content) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(content);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,547 @@
+package scheduler;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the longest zero weighted path of a {@link RetimingGraph} up to date
+ * while its nodes are shifted.
+ * <p>
+ * For every node the arrival time (length of the longest zero weighted path
+ * ending in and including this node) is stored. The longest path is the
+ * maximum arrival time, which is kept in a histogram of all arrival times.
+ * <p>
+ * Shifting a node v only changes the edges around v, so only v, its
+ * successors and nodes downstream of an arrival time that really changed
+ * have to be looked at. To visit those in the right order a topological
+ * order of the zero weighted subgraph is maintained (Pearce-Kelly): edges
+ * dropping out of the subgraph keep the order valid, new zero weighted edges
+ * only reorder the nodes between their endpoints.
+ * <p>
+ * {@link #evaluate(int, int)} computes the longest path a shift would lead
+ * to without changing the graph or the tracker. A negative shift turns v into
+ * a sink of the zero weighted subgraph, a positive shift into a source, so
+ * the current order stays usable if v is put at its end or its start.
+ */
+public class LongestPathTracker {
+
+	private final RetimingGraph graph;
+	/**
+	 * Arrival time of each node
+	 */
+	private final int[] arrival;
+	/**
+	 * Number of nodes with a given arrival time
+	 */
+	private final int[] arrivalCount;
+	private int longestPath;
+
+	/**
+	 * Edges of the zero weighted subgraph the topological order knows about
+	 */
+	private final boolean[] zero;
+	/**
+	 * Topological position of each node and node at each position
+	 */
+	private final int[] ord;
+	private final int[] nodeAt;
+
+	/**
+	 * Arrival times computed by the last evaluation and the nodes they belong to
+	 */
+	private final int[] tentative;
+	private final int[] tentativeMark;
+	private final int[] changed;
+	private int changedCount;
+	private int evaluatedNode = -1;
+	private int evaluatedShift;
+
+	/**
+	 * Node whose heap key is overridden by keyOverride, -1 for none
+	 */
+	private int keyNode = -1;
+	private int keyOverride;
+
+	/**
+	 * Helpattributes for reordering and propagation
+	 */
+	private final int[] heap;
+	private final int[] stack;
+	private final int[] forward;
+	private final int[] backward;
+	private final int[] pool;
+	private final int[] mark;
+	private int epoch;
+
+	public LongestPathTracker(RetimingGraph graph) {
+		this.graph = graph;
+		int n = graph.size();
+		int delaySum = 0;
+		for (int v = 0; v < n; v++) {
+			delaySum += graph.delay[v];
+		}
+		arrival = new int[n];
+		arrivalCount = new int[delaySum + 1];
+		zero = new boolean[graph.edgeCount()];
+		ord = new int[n];
+		nodeAt = new int[n];
+		heap = new int[n];
+		stack = new int[n];
+		forward = new int[n];
+		backward = new int[n];
+		pool = new int[n];
+		mark = new int[n];
+		tentative = new int[n];
+		tentativeMark = new int[n];
+		changed = new int[n];
+		recompute();
+	}
+
+	public RetimingGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return the length of the longest zero weighted path of the current graph
+	 */
+	public int longestPath() {
+		return longestPath;
+	}
+
+	/**
+	 * Recomputes the topological order and all arrival times from scratch.
+	 */
+	public void recompute() {
+		evaluatedNode = -1;
+		int n = graph.size();
+		int[] outStart = graph.outStart;
+		int[] target = graph.target;
+		int[] weight = graph.weight;
+
+		// Kahn's algorithm, pending counts are kept in stack
+		Arrays.fill(stack, 0);
+		for (int e = 0; e < weight.length; e++) {
+			zero[e] = weight[e] == 0;
+			if (zero[e]) {
+				stack[target[e]]++;
+			}
+		}
+		int head = 0, tail = 0;
+		for (int v = 0; v < n; v++) {
+			if (stack[v] == 0) {
+				nodeAt[tail++] = v;
+			}
+		}
+		while (head < tail) {
+			int v = nodeAt[head];
+			ord[v] = head++;
+			for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+				if (zero[e] && --stack[target[e]] == 0) {
+					nodeAt[tail++] = target[e];
+				}
+			}
+		}
+		if (tail < n) {
+			throw new IllegalArgumentException("Found cycle of zero weighted edges");
+		}
+
+		Arrays.fill(arrival, 0);
+		Arrays.fill(arrivalCount, 0);
+		arrivalCount[0] = n;
+		longestPath = 0;
+		for (int i = 0; i < n; i++) {
+			int v = nodeAt[i];
+			setArrival(v, computeArrival(v));
+		}
+	}
+
+	/**
+	 * Updates the order and the arrival times after node v has been shifted.
+	 * @param v - the shifted node
+	 */
+	public void update(int v) {
+		evaluatedNode = -1;
+		updateOrder(v);
+		propagate(v);
+	}
+
+	/**
+	 * Shifts node v by s and updates the tracker. If the move was the last
+	 * one evaluated, the arrival times computed there are reused.
+	 * @param v - node to shift
+	 * @param s - iteration shift
+	 */
+	public void apply(int v, int s) {
+		graph.shift(v, s);
+		if (evaluatedNode != v || evaluatedShift != s) {
+			update(v);
+			return;
+		}
+		evaluatedNode = -1;
+		updateOrder(v);
+		for (int i = 0; i < changedCount; i++) {
+			setArrival(changed[i], tentative[changed[i]]);
+		}
+	}
+
+	/**
+	 * Computes the longest zero weighted path the graph would have if node v
+	 * was shifted by s. Neither the graph nor the tracker are changed.
+	 * @param v - node to shift
+	 * @param s - iteration shift
+	 * @return the longest zero weighted path after the move
+	 */
+	public int evaluate(int v, int s) {
+		int[] inStart = graph.inStart;
+		int[] inEdge = graph.inEdge;
+		int[] outStart = graph.outStart;
+		int[] source = graph.source;
+		int[] target = graph.target;
+		int[] weight = graph.weight;
+
+		evaluatedNode = v;
+		evaluatedShift = s;
+		changedCount = 0;
+		if (s == 0) {
+			return longestPath;
+		}
+		keyNode = v;
+		keyOverride = s < 0 ? graph.size() : -1;
+
+		epoch++;
+		int size = 0;
+		mark[v] = epoch;
+		size = heapPush(size, v);
+		for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+			int w = target[e];
+			if (mark[w] != epoch) {
+				mark[w] = epoch;
+				size = heapPush(size, w);
+			}
+		}
+		int newLongestPath = 0;
+		while (size > 0) {
+			int u = heap[0];
+			size = heapPop(size);
+			int newArrival = 0;
+			for (int k = inStart[u]; k < inStart[u + 1]; k++) {
+				int e = inEdge[k];
+				int x = source[e];
+				if (weightAfter(e, weight[e], v, s) == 0) {
+					int arrivalX = tentativeMark[x] == epoch ? tentative[x] : arrival[x];
+					if (arrivalX > newArrival) {
+						newArrival = arrivalX;
+					}
+				}
+			}
+			newArrival += graph.delay[u];
+			if (newArrival == arrival[u]) {
+				continue;
+			}
+			tentative[u] = newArrival;
+			tentativeMark[u] = epoch;
+			changed[changedCount++] = u;
+			newLongestPath = Math.max(newLongestPath, newArrival);
+			for (int e = outStart[u]; e < outStart[u + 1]; e++) {
+				int w = target[e];
+				if (weightAfter(e, weight[e], v, s) == 0 && mark[w] != epoch) {
+					mark[w] = epoch;
+					size = heapPush(size, w);
+				}
+			}
+		}
+		keyNode = -1;
+
+		// maximum of the histogram with the changed arrival times
+		for (int i = 0; i < changedCount; i++) {
+			int u = changed[i];
+			arrivalCount[arrival[u]]--;
+			arrivalCount[tentative[u]]++;
+		}
+		newLongestPath = Math.max(newLongestPath, longestPath);
+		while (newLongestPath > 0 && arrivalCount[newLongestPath] == 0) {
+			newLongestPath--;
+		}
+		for (int i = 0; i < changedCount; i++) {
+			int u = changed[i];
+			arrivalCount[tentative[u]]--;
+			arrivalCount[arrival[u]]++;
+		}
+		return newLongestPath;
+	}
+
+	private int weightAfter(int e, int w, int v, int s) {
+		if (graph.target[e] == v) {
+			w += s;
+		}
+		if (graph.source[e] == v) {
+			w -= s;
+		}
+		return w;
+	}
+
+	/**
+	 * Updates the zero weighted subgraph and its order after node v has been shifted.
+	 */
+	private void updateOrder(int v) {
+		int[] inStart = graph.inStart;
+		int[] inEdge = graph.inEdge;
+		int[] outStart = graph.outStart;
+		int[] weight = graph.weight;
+
+		for (int k = inStart[v]; k < inStart[v + 1]; k++) {
+			int e = inEdge[k];
+			if (weight[e] != 0) {
+				zero[e] = false;
+			}
+		}
+		for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+			if (weight[e] != 0) {
+				zero[e] = false;
+			}
+		}
+		for (int k = inStart[v]; k < inStart[v + 1]; k++) {
+			int e = inEdge[k];
+			if (weight[e] == 0 && !zero[e]) {
+				insertZeroEdge(e);
+			}
+		}
+		for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+			if (weight[e] == 0 && !zero[e]) {
+				insertZeroEdge(e);
+			}
+		}
+	}
+
+	private int computeArrival(int v) {
+		int[] inStart = graph.inStart;
+		int[] inEdge = graph.inEdge;
+		int[] source = graph.source;
+		int result = 0;
+		for (int k = inStart[v]; k < inStart[v + 1]; k++) {
+			int e = inEdge[k];
+			if (zero[e] && arrival[source[e]] > result) {
+				result = arrival[source[e]];
+			}
+		}
+		return result + graph.delay[v];
+	}
+
+	/**
+	 * Recomputes the arrival times of v, its successors and everything
+	 * downstream of a changed arrival time in topological order.
+	 */
+	private void propagate(int v) {
+		int[] outStart = graph.outStart;
+		int[] target = graph.target;
+
+		epoch++;
+		int size = 0;
+		mark[v] = epoch;
+		size = heapPush(size, v);
+		for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+			int w = target[e];
+			if (mark[w] != epoch) {
+				mark[w] = epoch;
+				size = heapPush(size, w);
+			}
+		}
+		while (size > 0) {
+			int u = heap[0];
+			size = heapPop(size);
+			int newArrival = computeArrival(u);
+			if (newArrival == arrival[u]) {
+				continue;
+			}
+			setArrival(u, newArrival);
+			for (int e = outStart[u]; e < outStart[u + 1]; e++) {
+				int w = target[e];
+				if (zero[e] && mark[w] != epoch) {
+					mark[w] = epoch;
+					size = heapPush(size, w);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds edge e to the zero weighted subgraph and repairs the topological order.
+	 */
+	private void insertZeroEdge(int e) {
+		int x = graph.source[e];
+		int y = graph.target[e];
+		zero[e] = true;
+		int lb = ord[y];
+		int ub = ord[x];
+		if (lb > ub) {
+			return;
+		}
+		if (x == y) {
+			throw new IllegalArgumentException("Found cycle of zero weighted edges");
+		}
+		int[] outStart = graph.outStart;
+		int[] inStart = graph.inStart;
+		int[] inEdge = graph.inEdge;
+		int[] source = graph.source;
+		int[] target = graph.target;
+
+		// nodes reachable from y with position <= ub
+		epoch++;
+		int forwardSize = 0;
+		int top = 0;
+		mark[y] = epoch;
+		stack[top++] = y;
+		while (top > 0) {
+			int u = stack[--top];
+			forward[forwardSize++] = ord[u];
+			for (int f = outStart[u]; f < outStart[u + 1]; f++) {
+				int w = target[f];
+				if (zero[f] && mark[w] != epoch) {
+					if (w == x) {
+						throw new IllegalArgumentException("Found cycle of zero weighted edges");
+					}
+					if (ord[w] < ub) {
+						mark[w] = epoch;
+						stack[top++] = w;
+					}
+				}
+			}
+		}
+		// nodes reaching x with position >= lb
+		int backwardSize = 0;
+		mark[x] = epoch;
+		stack[top++] = x;
+		while (top > 0) {
+			int u = stack[--top];
+			backward[backwardSize++] = ord[u];
+			for (int k = inStart[u]; k < inStart[u + 1]; k++) {
+				int f = inEdge[k];
+				int w = source[f];
+				if (zero[f] && mark[w] != epoch && ord[w] > lb) {
+					mark[w] = epoch;
+					stack[top++] = w;
+				}
+			}
+		}
+
+		// the backward nodes take the first free positions, then the forward nodes
+		sort(forward, forwardSize);
+		sort(backward, backwardSize);
+		for (int i = 0; i < forwardSize; i++) {
+			forward[i] = nodeAt[forward[i]];
+		}
+		for (int i = 0; i < backwardSize; i++) {
+			backward[i] = nodeAt[backward[i]];
+		}
+		int poolSize = 0;
+		for (int i = 0, j = 0; i < backwardSize || j < forwardSize;) {
+			if (j == forwardSize || (i < backwardSize && ord[backward[i]] < ord[forward[j]])) {
+				pool[poolSize++] = ord[backward[i++]];
+			} else {
+				pool[poolSize++] = ord[forward[j++]];
+			}
+		}
+		int p = 0;
+		for (int i = 0; i < backwardSize; i++) {
+			place(backward[i], pool[p++]);
+		}
+		for (int i = 0; i < forwardSize; i++) {
+			place(forward[i], pool[p++]);
+		}
+	}
+
+	/**
+	 * In-place heapsort of the first size elements. Unlike Arrays.sort it
+	 * never allocates, which keeps the annealing loop free of garbage.
+	 */
+	private static void sort(int[] a, int size) {
+		for (int i = size / 2 - 1; i >= 0; i--) {
+			siftDown(a, i, size);
+		}
+		for (int end = size - 1; end > 0; end--) {
+			int tmp = a[0];
+			a[0] = a[end];
+			a[end] = tmp;
+			siftDown(a, 0, end);
+		}
+	}
+
+	private static void siftDown(int[] a, int i, int size) {
+		int value = a[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && a[child + 1] > a[child]) {
+				child++;
+			}
+			if (a[child] <= value) {
+				break;
+			}
+			a[i] = a[child];
+			i = child;
+		}
+		a[i] = value;
+	}
+
+	private void place(int v, int position) {
+		ord[v] = position;
+		nodeAt[position] = v;
+	}
+
+	private int key(int v) {
+		return v == keyNode ? keyOverride : ord[v];
+	}
+
+	private int heapPush(int size, int v) {
+		int i = size++;
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (key(heap[parent]) <= key(v)) {
+				break;
+			}
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = v;
+		return size;
+	}
+
+	private int heapPop(int size) {
+		int v = heap[--size];
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && key(heap[child + 1]) < key(heap[child])) {
+				child++;
+			}
+			if (key(heap[child]) >= key(v)) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = v;
+		return size;
+	}
+
+	private void setArrival(int v, int value) {
+		int old = arrival[v];
+		if (old == value) {
+			return;
+		}
+		arrivalCount[old]--;
+		arrival[v] = value;
+		arrivalCount[value]++;
+		if (value > longestPath) {
+			longestPath = value;
+		}
+		while (longestPath > 0 && arrivalCount[longestPath] == 0) {
+			longestPath--;
+		}
+	}
+
+}
@@ -15,7 +15,6 @@ public class Main {
 			rc.parse(args[1]);
 		}
 		
-		Dot_reader dr = new Dot_reader(true);
 		if (args.length < 1) {
 			System.err.printf("Usage: scheduler dotfile%n");
 			System.exit(-1);
@@ -24,7 +23,7 @@ public class Main {
 			System.out.println();
 		}
 		
-		Graph g = dr.parse(args[0]);
+		Graph g = new GraphCache(true).load(args[0]);
 		//System.out.printf("%s%n", g.diagnose());
 		System.out.println("Number of nodes: " + g.size());
 		
@@ -42,8 +41,6 @@ public class Main {
 		blacklist.add("testCyclic");
 		blacklist.add("testIICyclic");
 		blacklist.add("serpent"); // unknown
-		blacklist.add("CubeHash512Digest-sixteenRounds-2-2891"); // 9m
-		blacklist.add("SerpentEngine-encryptBlock-51-2815"); // 25m 
 		
 		Sweep.sweep(10, 5f, false, blacklist);
 //		Sweep.sweep(10, 2f, false, blacklist);
@@ -52,7 +49,7 @@ public class Main {
 //		Sweep.sweep(10, .1f, false, blacklist);
 	}
 	public static void sweepOne(Graph graph) {
-		Sweep.multipleRuns(graph, 100, true);
+		Sweep.multipleRuns(graph, 100, true, Runtime.getRuntime().availableProcessors());
 	}
 	
 	public static void saRetiming(Graph graph, String[] args) {
@@ -60,8 +57,13 @@ public class Main {
 		
 		SARetiming sa = new SARetiming(graph);
 		sa.setAllowShiftsGr1(true);
+		Long seed = Long.getLong(ResultCache.SEED_PROPERTY);
+		if (seed != null) {
+			sa.setSeed(seed);
+		}
 		
-		SARetimingResultPackage resultPackage = sa.run(1);	// knapp 50% langsamer mit Ausgaben
+		// only seeded runs are cached
+		SARetimingResultPackage resultPackage = new ResultCache().run(sa, 1);	// knapp 50% langsamer mit Ausgaben
 		resultPackage.printDiagnose();
 		resultPackage.graph.draw("modGraphs/result_", args[0]);
 //		sa.evaluate(args[0], resultPackage.wallclock);
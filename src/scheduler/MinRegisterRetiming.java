@@ -0,0 +1,200 @@
+package scheduler;
+
+import scheduler.SARetiming.SARetimingResultPackage;
+import scheduler.SARetiming.StopReason;
+
+/**
+ * Retiming with the minimum shift sum (total edge weight, i.e. registers)
+ * among all retimings with an II of at most a given period.
+ * <p>
+ * The shift sum of a retiming r is the initial sum plus the sum over all
+ * nodes of r[v] * (indeg(v) - outdeg(v)). It is minimized subject to
+ * <ul>
+ * <li>r[u] - r[v] <= w(e) for every edge e = u -> v (no negative weights) and</li>
+ * <li>r[u] - r[v] <= w(p) - 1 for every path p from u to v with a delay sum
+ * larger than the period (the path must keep a weight of at least 1).</li>
+ * </ul>
+ * This linear program is the dual of an uncapacitated minimum cost flow
+ * problem, which is solved by {@link NetworkSimplex}: every constraint is
+ * an arc u -> v with cost w - 1 or w, every node has a supply of
+ * outdeg(v) - indeg(v).
+ * <p>
+ * There are far too many path constraints to generate them all, so they are
+ * added lazily: the flow problem is solved with the edge constraints only,
+ * the retimed graph is checked against the period, and for every node at
+ * the end of a too long zero weighted path the constraint of the shortest
+ * violating suffix of that path is added. The network simplex continues
+ * from the previous tree until no path is too long.
+ * <p>
+ * Like {@link ExactRetiming}, this minimizes over all retimings, i.e. the
+ * graphs the annealer reaches with allowShiftsGr1 set. For an annealer
+ * without shifts greater than 1 the result is a lower bound on the shift
+ * sum, which it may not reach (see {@link ExactRetiming}).
+ */
+public class MinRegisterRetiming {
+
+	private final RetimingGraph initRetimingGraph;
+	private int[] bestRetiming;
+	private int rounds;
+	private int constraints;
+	private long pivots;
+
+	public MinRegisterRetiming(Graph graph) {
+		initRetimingGraph = new RetimingGraph(graph);
+	}
+
+	/**
+	 * @return the retiming of the last result, relative to the input graph
+	 */
+	public int[] getBestRetiming() {
+		return bestRetiming;
+	}
+
+	/**
+	 * @return number of flow problems solved for the last result
+	 */
+	public int getRounds() {
+		return rounds;
+	}
+
+	/**
+	 * @return number of path constraints added for the last result
+	 */
+	public int getConstraints() {
+		return constraints;
+	}
+
+	/**
+	 * @return number of network simplex pivots for the last result
+	 */
+	public long getPivots() {
+		return pivots;
+	}
+
+	/**
+	 * Retimes the graph for the minimum II found by {@link ExactRetiming} with
+	 * the minimum shift sum.
+	 */
+	public SARetimingResultPackage run(int print) {
+		ExactRetiming exact = new ExactRetiming(initRetimingGraph.toGraph());
+		return run(exact.run(0).bestII, print);
+	}
+
+	/**
+	 * Retimes the graph for the given II with the minimum shift sum.
+	 * @param period - II to reach
+	 * @throws IllegalArgumentException if no retiming reaches the II
+	 */
+	public SARetimingResultPackage run(int period, int print) {
+		long startTime = System.currentTimeMillis();
+		int[] retiming = retime(period);
+		long wallclock = System.currentTimeMillis() - startTime;
+
+		RetimingGraph best = new RetimingGraph(initRetimingGraph, retiming);
+		int initII = SARetiming.longestZeroWeightedPath(initRetimingGraph);
+		int bestII = SARetiming.longestZeroWeightedPath(best);
+		if (print >= 1) {
+			System.out.println("Initial Achieved II = " + initII + ". Initial shift sum = " + SARetiming.shiftSum(initRetimingGraph));
+			System.out.println("\n\nII " + bestII + " with minimum shift sum " + SARetiming.shiftSum(best)
+					+ " (" + rounds + " rounds, " + constraints + " path constraints, " + pivots + " pivots)\n");
+		}
+
+		float initCost = SARetiming.getGraphCost(initRetimingGraph);
+		float bestCost = SARetiming.getGraphCost(best);
+		int initSum = SARetiming.shiftSum(initRetimingGraph), bestSum = SARetiming.shiftSum(best);
+		int initMax = SARetiming.shiftMax(initRetimingGraph), bestMax = SARetiming.shiftMax(best);
+		return new SARetimingResultPackage(best.toGraph(), ExactRetiming.hasLooseNodes(initRetimingGraph), SARetiming.LOOSE_NODE_SHIFT_MAX,
+				wallclock, 0, 0,
+				initII, Math.max(initII, bestII), bestII, bestII,
+				initSum, Math.max(initSum, bestSum), bestSum, bestSum,
+				initMax, Math.max(initMax, bestMax), bestMax, bestMax,
+				initCost, Math.max(initCost, bestCost), bestCost, bestCost,
+				pivots, SARetiming.lowerBound(initRetimingGraph), StopReason.OPTIMAL, new int[] { rounds });
+	}
+
+	/**
+	 * Computes a retiming with an II of at most period and the minimum shift sum.
+	 * @param period - II to reach
+	 * @return the shift of every node, relative to the input graph
+	 * @throws IllegalArgumentException if no retiming reaches the II
+	 */
+	public int[] retime(int period) {
+		RetimingGraph graph = initRetimingGraph;
+		int n = graph.size();
+		int m = graph.edgeCount();
+		int[] arrival = new int[n];
+		int[] order = new int[n];
+		if (ExactRetiming.feasible(new RetimingGraph(graph), period, arrival, order) < 0) {
+			throw new IllegalArgumentException("II " + period + " cannot be reached by retiming");
+		}
+
+		NetworkSimplex flow = new NetworkSimplex(n);
+		long totalWeight = 0;
+		for (int e = 0; e < m; e++) {
+			flow.addArc(graph.source[e], graph.target[e], graph.weight[e]);
+			totalWeight += graph.weight[e];
+		}
+		for (int v = 0; v < n; v++) {
+			flow.setSupply(v, (graph.outStart[v + 1] - graph.outStart[v]) - (graph.inStart[v + 1] - graph.inStart[v]));
+		}
+		// a path constraint costs less than the weight of the whole graph
+		flow.setCostBound(totalWeight);
+
+		int[] retiming = new int[n];
+		rounds = 0;
+		while (true) {
+			rounds++;
+			if (!flow.solve()) {
+				throw new IllegalStateException("Retiming constraints are infeasible for II " + period);
+			}
+			long offset = flow.getPotential(0);
+			for (int v = 0; v < n; v++) {
+				retiming[v] = (int) (offset - flow.getPotential(v));
+			}
+			RetimingGraph retimed = new RetimingGraph(graph, retiming);
+			if (retimed.arrivalTimes(arrival, order) <= period) {
+				break;
+			}
+			addPathConstraints(flow, retimed, period, arrival, retiming);
+		}
+		constraints = flow.getArcCount() - m;
+		pivots = flow.getPivots();
+		bestRetiming = retiming;
+		return retiming.clone();
+	}
+
+	/**
+	 * Adds the constraint of the shortest too long zero weighted path ending
+	 * in each node whose arrival time exceeds the period.
+	 */
+	private static void addPathConstraints(NetworkSimplex flow, RetimingGraph retimed, int period, int[] arrival, int[] retiming) {
+		for (int v = 0; v < retimed.size(); v++) {
+			if (arrival[v] <= period) {
+				continue;
+			}
+			int u = v;
+			int delay = retimed.delay[v];
+			while (delay <= period) {
+				u = zeroWeightedPredecessor(retimed, u, arrival);
+				delay += retimed.delay[u];
+			}
+			// the retimed path weight 0 equals w(p) + r[v] - r[u]
+			flow.addArc(u, v, retiming[u] - retiming[v] - 1);
+		}
+	}
+
+	/**
+	 * @return a predecessor of v over a zero weighted edge on a longest path
+	 */
+	private static int zeroWeightedPredecessor(RetimingGraph graph, int v, int[] arrival) {
+		int expected = arrival[v] - graph.delay[v];
+		for (int k = graph.inStart[v]; k < graph.inStart[v + 1]; k++) {
+			int e = graph.inEdge[k];
+			if (graph.weight[e] == 0 && arrival[graph.source[e]] == expected) {
+				return graph.source[e];
+			}
+		}
+		throw new IllegalStateException("No zero weighted predecessor of node " + v);
+	}
+
+}
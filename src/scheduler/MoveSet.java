@@ -0,0 +1,197 @@
+package scheduler;
+
+import java.util.SplittableRandom;
+
+/**
+ * Set of all legal retiming moves (node, shift) of a {@link RetimingGraph}.
+ * <p>
+ * The legal shifts of a node v always form an interval [-minIn, minOut]
+ * (minimum weight of the incoming/outgoing edges) without 0. If shifts
+ * greater than 1 are not allowed, moves that make the maximum edge weight
+ * around v worse and greater than 1 are excluded, which again leaves an
+ * interval. So only the interval bounds are stored per node, and the number
+ * of moves per node is kept in a Fenwick tree. A move is drawn uniformly in
+ * O(log n) without building the list of all moves. After a node has been
+ * shifted, {@link #update(int)} recomputes the node and its neighbours.
+ */
+public class MoveSet {
+
+	private final RetimingGraph graph;
+	private final boolean allowShiftsGr1;
+	private boolean foundLooseNodes;
+
+	/**
+	 * Smallest legal shift of each node
+	 */
+	private final int[] lowShift;
+	/**
+	 * Number of legal moves of each node and Fenwick tree over them
+	 */
+	private final int[] count;
+	private final int[] tree;
+	private int total;
+
+	private int node;
+	private int shift;
+
+	public MoveSet(RetimingGraph graph, boolean allowShiftsGr1) {
+		this.graph = graph;
+		this.allowShiftsGr1 = allowShiftsGr1;
+		int n = graph.size();
+		lowShift = new int[n];
+		count = new int[n];
+		tree = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			computeRange(v);
+			total += count[v];
+			tree[v + 1] += count[v];
+			int parent = (v + 1) + ((v + 1) & -(v + 1));
+			if (parent <= n) {
+				tree[parent] += tree[v + 1];
+			}
+		}
+	}
+
+	/**
+	 * @return true iff a node without predecessors and/or successors was found
+	 */
+	public boolean foundLooseNodes() {
+		return foundLooseNodes;
+	}
+
+	/**
+	 * @return the number of legal moves
+	 */
+	public int size() {
+		return total;
+	}
+
+	/**
+	 * Draws a legal move uniformly at random. The move is available through
+	 * {@link #getNode()} and {@link #getShift()}.
+	 * @param random - random number generator to use
+	 * @throws IllegalArgumentException if there is no legal move
+	 */
+	public void sample(SplittableRandom random) {
+		if (total <= 0) {
+			throw new IllegalArgumentException("No legal retiming move");
+		}
+		int k = random.nextInt(total);
+
+		// Fenwick descent: find the node whose moves contain index k
+		int pos = 0;
+		for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+			int next = pos + step;
+			if (next < tree.length && tree[next] <= k) {
+				pos = next;
+				k -= tree[next];
+			}
+		}
+		node = pos;
+		shift = lowShift[node] + k;
+		if (lowShift[node] <= 0 && shift >= 0) {
+			shift++;
+		}
+	}
+
+	public int getNode() {
+		return node;
+	}
+
+	public int getShift() {
+		return shift;
+	}
+
+	/**
+	 * Updates the legal moves after node v has been shifted.
+	 * @param v - the shifted node
+	 */
+	public void update(int v) {
+		refresh(v);
+		for (int k = graph.inStart[v]; k < graph.inStart[v + 1]; k++) {
+			refresh(graph.source[graph.inEdge[k]]);
+		}
+		for (int e = graph.outStart[v]; e < graph.outStart[v + 1]; e++) {
+			refresh(graph.target[e]);
+		}
+	}
+
+	private void refresh(int v) {
+		int oldCount = count[v];
+		computeRange(v);
+		int delta = count[v] - oldCount;
+		if (delta != 0) {
+			total += delta;
+			for (int i = v + 1; i < tree.length; i += i & -i) {
+				tree[i] += delta;
+			}
+		}
+	}
+
+	private void computeRange(int v) {
+		int[] weight = graph.weight;
+		int minIn = Integer.MAX_VALUE;
+		int maxIn = Integer.MIN_VALUE;
+		for (int k = graph.inStart[v]; k < graph.inStart[v + 1]; k++) {
+			int w = weight[graph.inEdge[k]];
+			minIn = Math.min(minIn, w);
+			maxIn = Math.max(maxIn, w);
+		}
+		int minOut = Integer.MAX_VALUE;
+		int maxOut = Integer.MIN_VALUE;
+		for (int e = graph.outStart[v]; e < graph.outStart[v + 1]; e++) {
+			int w = weight[e];
+			minOut = Math.min(minOut, w);
+			maxOut = Math.max(maxOut, w);
+		}
+
+		int low, high;
+		if (minIn == Integer.MAX_VALUE && minOut == Integer.MAX_VALUE) {
+			// isolated node
+			foundLooseNodes = true;
+			low = -SARetiming.LOOSE_NODE_SHIFT_MAX;
+			high = SARetiming.LOOSE_NODE_SHIFT_MAX;
+		} else {
+			if (minIn == Integer.MAX_VALUE) {
+				// no incoming edges
+				foundLooseNodes = true;
+				if (allowShiftsGr1) {
+					minIn = SARetiming.LOOSE_NODE_SHIFT_MAX;
+				} else {
+					minIn = minOut;
+					maxIn = -minOut;
+				}
+			}
+			if (minOut == Integer.MAX_VALUE) {
+				// no outgoing edges
+				foundLooseNodes = true;
+				if (allowShiftsGr1) {
+					minOut = SARetiming.LOOSE_NODE_SHIFT_MAX;
+				} else {
+					minOut = minIn;
+					maxOut = -minIn;
+				}
+			}
+			low = -minIn;
+			high = minOut;
+			if (!allowShiftsGr1) {
+				// reject moves that worsen the maxShift AND result in a maxShift > 1:
+				// max(maxIn + s, maxOut - s) <= max(oldMaxShift, 1)
+				int limit = Math.max(Math.max(maxIn, maxOut), 1);
+				low = Math.max(low, maxOut - limit);
+				high = Math.min(high, limit - maxIn);
+			}
+		}
+
+		lowShift[v] = low;
+		if (low > high) {
+			count[v] = 0;
+		} else {
+			count[v] = high - low + 1;
+			if (low <= 0 && high >= 0) {
+				count[v]--;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,392 @@
+package scheduler;
+
+import java.util.Arrays;
+
+/**
+ * Uncapacitated minimum cost flow by the primal network simplex method.
+ * <p>
+ * Every node has a supply (negative for a demand), the supplies must sum up
+ * to 0. Arcs have a cost and no capacity. The spanning tree starts with one
+ * artificial arc between every node and an artificial root, the artificial
+ * arcs to the root are expensive enough to carry no flow in an optimal
+ * solution if a feasible flow exists. The tree is kept strongly feasible
+ * (Cunningham's leaving arc rule), so degenerate pivots cannot cycle. The
+ * entering arc is the most negative one of a block of about sqrt(arcs)
+ * arcs, the blocks are scanned round robin.
+ * <p>
+ * Arcs may be added after {@link #solve()}: the old tree stays feasible
+ * and the next call continues from it.
+ * <p>
+ * At the optimum c(u, v) + pi(u) - pi(v) >= 0 holds for all arcs, so -pi is
+ * an optimal solution of the dual problem: minimize sum supply(v) * r(v)
+ * subject to r(u) - r(v) <= c(u, v) for all arcs.
+ */
+public class NetworkSimplex {
+
+	private static final int UP = 1;
+	private static final int DOWN = -1;
+
+	private final int n;
+	private final int root;
+	private final long[] supply;
+	private long costBound;
+
+	/**
+	 * Arcs 0..n-1 are the artificial arcs, arc v connects node v with the root
+	 */
+	private int arcCount;
+	private int[] source;
+	private int[] target;
+	private long[] cost;
+	private long[] flow;
+	private boolean[] inTree;
+
+	/**
+	 * Spanning tree: parent node, arc to the parent and its direction, depth
+	 * and the children as a doubly linked list
+	 */
+	private final int[] parent;
+	private final int[] pred;
+	private final int[] predDir;
+	private final int[] depth;
+	private final int[] firstChild;
+	private final int[] nextSibling;
+	private final int[] prevSibling;
+	private final long[] potential;
+	private final int[] stack;
+
+	private boolean initialized;
+	private int nextArc;
+	private long pivots;
+
+	/**
+	 * @param n - number of nodes
+	 */
+	public NetworkSimplex(int n) {
+		this.n = n;
+		root = n;
+		supply = new long[n];
+		source = new int[Math.max(2 * n, 16)];
+		target = new int[source.length];
+		cost = new long[source.length];
+		flow = new long[source.length];
+		inTree = new boolean[source.length];
+		arcCount = n;
+		parent = new int[n + 1];
+		pred = new int[n + 1];
+		predDir = new int[n + 1];
+		depth = new int[n + 1];
+		firstChild = new int[n + 1];
+		nextSibling = new int[n + 1];
+		prevSibling = new int[n + 1];
+		potential = new long[n + 1];
+		stack = new int[n + 1];
+	}
+
+	public void setSupply(int v, long value) {
+		if (initialized) {
+			throw new IllegalStateException("Supplies must be set before the first solve");
+		}
+		supply[v] = value;
+	}
+
+	/**
+	 * Needed if arcs added after the first {@link #solve()} are more
+	 * expensive than the arcs before.
+	 * @param bound - upper bound of the absolute cost of all arcs
+	 */
+	public void setCostBound(long bound) {
+		if (initialized) {
+			throw new IllegalStateException("Cost bound must be set before the first solve");
+		}
+		costBound = bound;
+	}
+
+	/**
+	 * Adds the arc u -> v.
+	 * @return the id of the arc
+	 */
+	public int addArc(int u, int v, long arcCost) {
+		if (arcCount == source.length) {
+			int length = 2 * arcCount;
+			source = Arrays.copyOf(source, length);
+			target = Arrays.copyOf(target, length);
+			cost = Arrays.copyOf(cost, length);
+			flow = Arrays.copyOf(flow, length);
+			inTree = Arrays.copyOf(inTree, length);
+		}
+		source[arcCount] = u;
+		target[arcCount] = v;
+		cost[arcCount] = arcCost;
+		return arcCount++;
+	}
+
+	/**
+	 * @return the number of arcs added by {@link #addArc(int, int, long)}
+	 */
+	public int getArcCount() {
+		return arcCount - n;
+	}
+
+	public long getFlow(int arc) {
+		return flow[arc];
+	}
+
+	/**
+	 * @return the potential of node v, -potential is the optimal dual solution
+	 */
+	public long getPotential(int v) {
+		return potential[v] - potential[root];
+	}
+
+	/**
+	 * @return the total number of pivots of all calls of {@link #solve()}
+	 */
+	public long getPivots() {
+		return pivots;
+	}
+
+	/**
+	 * @return the cost of the current flow
+	 */
+	public long getCost() {
+		long sum = 0;
+		for (int a = n; a < arcCount; a++) {
+			sum += cost[a] * flow[a];
+		}
+		return sum;
+	}
+
+	/**
+	 * Computes a minimum cost flow.
+	 * @return false if no feasible flow exists or the cost is unbounded (a
+	 * negative cycle), true otherwise
+	 */
+	public boolean solve() {
+		if (!initialized) {
+			init();
+		}
+		int blockSize = Math.max((int) Math.sqrt(arcCount), 10);
+		while (true) {
+			int in = findEnteringArc(blockSize);
+			if (in < 0) {
+				break;
+			}
+			if (!pivot(in)) {
+				return false;
+			}
+			pivots++;
+		}
+		for (int v = 0; v < n; v++) {
+			if (flow[v] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void init() {
+		long sum = 0, maxCost = costBound;
+		for (int v = 0; v < n; v++) {
+			sum += supply[v];
+		}
+		if (sum != 0) {
+			throw new IllegalArgumentException("Supplies do not sum up to 0");
+		}
+		for (int a = n; a < arcCount; a++) {
+			maxCost = Math.max(maxCost, Math.abs(cost[a]));
+		}
+		long artificialCost = (maxCost + 1) * (n + 1);
+
+		parent[root] = -1;
+		pred[root] = -1;
+		depth[root] = 0;
+		potential[root] = 0;
+		firstChild[root] = -1;
+		nextSibling[root] = -1;
+		prevSibling[root] = -1;
+		for (int v = 0; v < n; v++) {
+			parent[v] = root;
+			pred[v] = v;
+			depth[v] = 1;
+			firstChild[v] = -1;
+			inTree[v] = true;
+			// zero flow arcs point to the root, so the tree is strongly feasible
+			if (supply[v] >= 0) {
+				source[v] = v;
+				target[v] = root;
+				cost[v] = 0;
+				flow[v] = supply[v];
+				predDir[v] = UP;
+				potential[v] = 0;
+			} else {
+				source[v] = root;
+				target[v] = v;
+				cost[v] = artificialCost;
+				flow[v] = -supply[v];
+				predDir[v] = DOWN;
+				potential[v] = artificialCost;
+			}
+			prevSibling[v] = v == 0 ? -1 : v - 1;
+			nextSibling[v] = v == n - 1 ? -1 : v + 1;
+		}
+		firstChild[root] = n > 0 ? 0 : -1;
+		nextArc = n;
+		initialized = true;
+	}
+
+	private long reducedCost(int a) {
+		return cost[a] + potential[source[a]] - potential[target[a]];
+	}
+
+	private int findEnteringArc(int blockSize) {
+		int count = arcCount - n;
+		if (count == 0) {
+			return -1;
+		}
+		if (nextArc < n || nextArc >= arcCount) {
+			nextArc = n;
+		}
+		int best = -1;
+		long min = 0;
+		int scanned = 0;
+		for (int k = 0; k < count; k++) {
+			int a = nextArc;
+			if (++nextArc == arcCount) {
+				nextArc = n;
+			}
+			if (!inTree[a]) {
+				long rc = reducedCost(a);
+				if (rc < min) {
+					min = rc;
+					best = a;
+				}
+			}
+			if (++scanned == blockSize) {
+				if (best >= 0) {
+					return best;
+				}
+				scanned = 0;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Pushes flow around the cycle of the entering arc and exchanges it with
+	 * the leaving arc.
+	 * @return false if the cycle is unbounded
+	 */
+	private boolean pivot(int in) {
+		int first = source[in];
+		int second = target[in];
+		int join = first, other = second;
+		while (join != other) {
+			if (depth[join] > depth[other]) {
+				join = parent[join];
+			} else if (depth[other] > depth[join]) {
+				other = parent[other];
+			} else {
+				join = parent[join];
+				other = parent[other];
+			}
+		}
+
+		// the flow goes from first over the entering arc to second, up to
+		// join and down to first; arcs against this direction limit it
+		long delta = Long.MAX_VALUE;
+		int out = -1;
+		boolean outOnFirst = false;
+		for (int u = first; u != join; u = parent[u]) {
+			if (predDir[u] == UP && flow[pred[u]] < delta) {
+				delta = flow[pred[u]];
+				out = u;
+				outOnFirst = true;
+			}
+		}
+		for (int u = second; u != join; u = parent[u]) {
+			if (predDir[u] == DOWN && flow[pred[u]] <= delta) {
+				delta = flow[pred[u]];
+				out = u;
+				outOnFirst = false;
+			}
+		}
+		if (out < 0) {
+			return false;
+		}
+
+		if (delta > 0) {
+			flow[in] += delta;
+			for (int u = first; u != join; u = parent[u]) {
+				flow[pred[u]] -= predDir[u] * delta;
+			}
+			for (int u = second; u != join; u = parent[u]) {
+				flow[pred[u]] += predDir[u] * delta;
+			}
+		}
+
+		// the subtree below out is cut off and hangs on the entering arc now
+		int uIn = outOnFirst ? first : second;
+		int vIn = outOnFirst ? second : first;
+		inTree[pred[out]] = false;
+		inTree[in] = true;
+
+		int newParent = vIn;
+		int newPred = in;
+		int newDir = source[in] == uIn ? UP : DOWN;
+		int u = uIn;
+		while (true) {
+			int oldParent = parent[u];
+			int oldPred = pred[u];
+			int oldDir = predDir[u];
+			removeChild(oldParent, u);
+			parent[u] = newParent;
+			pred[u] = newPred;
+			predDir[u] = newDir;
+			addChild(newParent, u);
+			if (u == out) {
+				break;
+			}
+			newParent = u;
+			newPred = oldPred;
+			newDir = -oldDir;
+			u = oldParent;
+		}
+
+		long shift = source[in] == uIn
+				? potential[vIn] - cost[in] - potential[uIn]
+				: potential[vIn] + cost[in] - potential[uIn];
+		int top = 0;
+		stack[top++] = uIn;
+		while (top > 0) {
+			int v = stack[--top];
+			potential[v] += shift;
+			depth[v] = depth[parent[v]] + 1;
+			for (int c = firstChild[v]; c >= 0; c = nextSibling[c]) {
+				stack[top++] = c;
+			}
+		}
+		return true;
+	}
+
+	private void removeChild(int p, int c) {
+		if (prevSibling[c] >= 0) {
+			nextSibling[prevSibling[c]] = nextSibling[c];
+		} else {
+			firstChild[p] = nextSibling[c];
+		}
+		if (nextSibling[c] >= 0) {
+			prevSibling[nextSibling[c]] = prevSibling[c];
+		}
+	}
+
+	private void addChild(int p, int c) {
+		prevSibling[c] = -1;
+		nextSibling[c] = firstChild[p];
+		if (firstChild[p] >= 0) {
+			prevSibling[firstChild[p]] = c;
+		}
+		firstChild[p] = c;
+	}
+
+}
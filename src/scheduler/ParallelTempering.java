@@ -0,0 +1,363 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import scheduler.SARetiming.SARetimingResultPackage;
+import scheduler.SARetiming.StopReason;
+
+/**
+ * Retiming by parallel tempering (replica exchange).
+ * <p>
+ * K chains each run the annealing moves of {@link SARetiming} at a fixed
+ * temperature. The temperatures are spaced geometrically between the
+ * initial temperature of the annealing and the stop temperature. After
+ * every round of moves, chains at neighbouring temperatures swap with the
+ * usual Metropolis probability min(1, exp((b_i - b_j) * (E_i - E_j))),
+ * where b = 1000 / T as in the annealing. Only the temperatures are
+ * swapped, the chains keep their graph. Even and odd pairs are tried in
+ * alternating rounds.
+ * <p>
+ * Like the annealing, the run stops early with
+ * {@link StopReason#LOWER_BOUND} once the best graph has reached the lower
+ * bound of the II and a whole round brought no improvement. The moves per
+ * round are reported as the levels of the result package.
+ * <p>
+ * A round is a tenth of a temperature level of the annealing, so the chains
+ * meet at an exchange about every size^(4/3) moves, at least every 100.
+ * Like the annealing, a run can be given a time budget and can be
+ * cancelled; the chains check both every
+ * {@value SARetiming#CHECK_INTERVAL} moves.
+ * <p>
+ * The chains of one round run on a thread pool. The swaps are done by the
+ * calling thread with its own random number generator, and every chain has
+ * its own generator, so a seeded run gives the same result for any number
+ * of threads.
+ */
+public class ParallelTempering {
+
+	public static final int DEFAULT_REPLICAS = 8;
+
+	private final RetimingGraph initRetimingGraph;
+	private int replicas;
+	private int threads;
+	private float maxTemp;
+	private float minTemp;
+	private int rounds;
+	private int movesPerRound;
+	private boolean allowShiftsGr1;
+	private SplittableRandom random;
+	private volatile boolean cancelled;
+	// System.nanoTime() at which the current run has to stop, Long.MAX_VALUE for none
+	private volatile long deadline;
+
+	public ParallelTempering(Graph graph) {
+		initRetimingGraph = new RetimingGraph(graph);
+		replicas = DEFAULT_REPLICAS;
+		threads = Runtime.getRuntime().availableProcessors();
+		maxTemp = 0;
+		minTemp = SARetiming.DEFAULT_STOP_TEMP;
+		movesPerRound = Math.max((int) Math.round(Math.pow(graph.size(), 4./3.)), 100);
+		// every chain does about as many moves as a typical annealing run (4 temperature levels)
+		rounds = Math.max((int) Math.round(4 * 10 * Math.pow(graph.size(), 4./3.) / movesPerRound), 1);
+		allowShiftsGr1 = true;
+		random = new SplittableRandom();
+	}
+	public void setReplicas(int replicas) {
+		if (replicas < 1) {
+			throw new IllegalArgumentException("Need at least one replica");
+		}
+		this.replicas = replicas;
+	}
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	/**
+	 * @param maxTemp - temperature of the hottest chain, 0 to use the initial temperature of the annealing
+	 */
+	public void setMaxTemp(float maxTemp) {
+		this.maxTemp = maxTemp;
+	}
+	public void setMinTemp(float minTemp) {
+		this.minTemp = minTemp;
+	}
+	/**
+	 * @param rounds - number of exchange rounds
+	 * @param movesPerRound - moves every chain does between two exchanges
+	 */
+	public void setSchedule(int rounds, int movesPerRound) {
+		this.rounds = rounds;
+		this.movesPerRound = movesPerRound;
+	}
+	public void setAllowShiftsGr1(boolean allowShiftsGr1) {
+		this.allowShiftsGr1 = allowShiftsGr1;
+	}
+	public void setSeed(long seed) {
+		random = new SplittableRandom(seed);
+	}
+
+	/**
+	 * Stops the current run as soon as possible, it then returns the best
+	 * solution found so far. May be called from any thread. If no run is in
+	 * progress, the next run stops right after it has started.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public SARetimingResultPackage run(int print) {
+		return run(Long.MAX_VALUE, print);
+	}
+
+	/**
+	 * Runs until all rounds are done or until the budget is used up, whatever
+	 * comes first. When the deadline expires in the middle of a round, the
+	 * best solution so far is returned.
+	 * @param budget - maximum wall-clock time of the run
+	 */
+	public SARetimingResultPackage run(Duration budget) {
+		return run(budget, 0);
+	}
+	public SARetimingResultPackage run(Duration budget, int print) {
+		long now = System.nanoTime();
+		long nanos = budget.isNegative() ? 0 : budget.toNanos();
+		return run(nanos < Long.MAX_VALUE - now ? now + nanos : Long.MAX_VALUE, print);
+	}
+
+	private SARetimingResultPackage run(long deadline, int print) {
+		this.deadline = deadline;
+		long startTime = System.currentTimeMillis();
+		float hot = maxTemp;
+		if (hot <= 0) {
+			hot = SARetiming.findInitTemp(initRetimingGraph, allowShiftsGr1, random, print);
+		}
+		float cold = Math.min(minTemp, hot);
+		int lowerBound = SARetiming.lowerBound(initRetimingGraph);
+
+		float[] temps = new float[replicas];
+		for (int k = 0; k < replicas; k++) {
+			// temps[0] is the coldest
+			temps[k] = replicas == 1 ? cold : (float) (cold * Math.pow(hot / cold, (double) k / (replicas - 1)));
+		}
+		Chain[] chains = new Chain[replicas];
+		Chain[] chainAt = new Chain[replicas];
+		for (int k = 0; k < replicas; k++) {
+			chains[k] = new Chain(this, initRetimingGraph, allowShiftsGr1, random.split(), movesPerRound);
+			chainAt[k] = chains[k];
+		}
+		if (print >= 1) {
+			System.out.print("Temperatures:");
+			for (int k = 0; k < replicas; k++) {
+				System.out.print(" " + temps[k]);
+			}
+			System.out.println();
+		}
+
+		ExecutorService executor = null;
+		if (threads > 1 && replicas > 1) {
+			executor = Executors.newFixedThreadPool(Math.min(threads, replicas));
+		}
+		List<Chain> tasks = new ArrayList<Chain>(replicas);
+		for (int k = 0; k < replicas; k++) {
+			tasks.add(chains[k]);
+		}
+		int swapTries = 0, swaps = 0;
+		int[] roundMoves = new int[rounds];
+		int done = 0;
+		StopReason stopReason = StopReason.STOP_TEMP;
+		float minCost = chains[0].minCost;
+		try {
+			for (int round = 0; round < rounds; round++) {
+				for (int k = 0; k < replicas; k++) {
+					chainAt[k].temp = temps[k];
+				}
+				if (executor != null) {
+					for (Future<Void> future : executor.invokeAll(tasks)) {
+						future.get();
+					}
+				} else {
+					for (Chain chain : chains) {
+						chain.call();
+					}
+				}
+				roundMoves[done++] = chains[0].roundMoves;
+				if (cancelled) {
+					cancelled = false;
+					stopReason = StopReason.CANCELLED;
+					break;
+				}
+				if (pastDeadline()) {
+					stopReason = StopReason.DEADLINE;
+					break;
+				}
+
+				for (int k = round % 2; k + 1 < replicas; k += 2) {
+					double beta = 1000 / temps[k] - 1000 / temps[k + 1];
+					double delta = beta * (chainAt[k].cost - chainAt[k + 1].cost);
+					swapTries++;
+					if (delta >= 0 || random.nextDouble() < Math.exp(delta)) {
+						Chain chain = chainAt[k];
+						chainAt[k] = chainAt[k + 1];
+						chainAt[k + 1] = chain;
+						swaps++;
+					}
+				}
+				if (print >= 1 && (round + 1) % Math.max(rounds / 20, 1) == 0) {
+					System.out.println("\tRound " + (round + 1) + "/" + rounds + ": coldest II = " + chainAt[0].state.longestPath()
+							+ ", cost = " + chainAt[0].cost + ", swap rate = " + ((float) swaps / (float) Math.max(swapTries, 1)));
+				}
+
+				boolean improved = false;
+				int bestII = Integer.MAX_VALUE;
+				for (Chain chain : chains) {
+					if (chain.minCost < minCost) {
+						minCost = chain.minCost;
+						improved = true;
+					}
+					bestII = Math.min(bestII, chain.bestII);
+				}
+				if (bestII <= lowerBound && !improved) {
+					stopReason = StopReason.LOWER_BOUND;
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Parallel tempering interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+		long wallclock = System.currentTimeMillis() - startTime;
+
+		Chain best = chains[0];
+		float worstCost = chains[0].worstCost;
+		int worstII = chains[0].worstII, worstSum = chains[0].worstSum, worstMax = chains[0].worstMax;
+		boolean foundLooseNodes = false;
+		long moveEvaluations = 0;
+		for (Chain chain : chains) {
+			if (chain.minCost < best.minCost) {
+				best = chain;
+			}
+			worstCost = Math.max(worstCost, chain.worstCost);
+			worstII = Math.max(worstII, chain.worstII);
+			worstSum = Math.max(worstSum, chain.worstSum);
+			worstMax = Math.max(worstMax, chain.worstMax);
+			foundLooseNodes |= chain.state.getMoves().foundLooseNodes();
+			moveEvaluations += chain.moveEvaluations;
+		}
+		RetimingGraph bestGraph = new RetimingGraph(initRetimingGraph, best.bestRetiming);
+		RetimingGraph coldGraph = chainAt[0].state.getGraph();
+
+		if (print >= 1) {
+			if (stopReason == StopReason.LOWER_BOUND) {
+				System.out.println("\n\nReached lower bound " + lowerBound + " after " + done + " rounds with " + replicas + " replicas");
+			} else if (stopReason == StopReason.DEADLINE || stopReason == StopReason.CANCELLED) {
+				System.out.println("\n\nStopped (" + stopReason + ") after " + done + " rounds with " + replicas + " replicas");
+			} else {
+				System.out.println("\n\nFinished " + done + " rounds with " + replicas + " replicas");
+			}
+			System.out.println("Swap rate:\t\t" + ((float) swaps / (float) Math.max(swapTries, 1)) + "\n");
+		}
+
+		return new SARetimingResultPackage(bestGraph.toGraph(), foundLooseNodes, SARetiming.LOOSE_NODE_SHIFT_MAX,
+				wallclock, hot, cold,
+				SARetiming.longestZeroWeightedPath(initRetimingGraph), worstII, SARetiming.longestZeroWeightedPath(coldGraph), SARetiming.longestZeroWeightedPath(bestGraph),
+				SARetiming.shiftSum(initRetimingGraph), worstSum, SARetiming.shiftSum(coldGraph), SARetiming.shiftSum(bestGraph),
+				SARetiming.shiftMax(initRetimingGraph), worstMax, SARetiming.shiftMax(coldGraph), SARetiming.shiftMax(bestGraph),
+				SARetiming.getGraphCost(initRetimingGraph), worstCost, SARetiming.getGraphCost(coldGraph), SARetiming.getGraphCost(bestGraph),
+				moveEvaluations, lowerBound, stopReason, Arrays.copyOf(roundMoves, done));
+	}
+
+	/**
+	 * @return true iff the run was cancelled or its deadline has passed
+	 */
+	private boolean stopRequested() {
+		return cancelled || pastDeadline();
+	}
+
+	private boolean pastDeadline() {
+		return deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0;
+	}
+
+	/**
+	 * One Metropolis chain. The temperature is set by the exchange between two rounds.
+	 */
+	private static class Chain implements Callable<Void> {
+
+		final ParallelTempering engine;
+		final RetimingState state;
+		final SplittableRandom random;
+		final int moves;
+		float temp;
+		float cost;
+
+		float minCost, worstCost;
+		int bestII, worstII, worstSum, worstMax;
+		final int[] bestRetiming;
+		long moveEvaluations;
+		// moves of the last round, less than moves if the run was stopped
+		int roundMoves;
+
+		Chain(ParallelTempering engine, RetimingGraph initGraph, boolean allowShiftsGr1, SplittableRandom random, int moves) {
+			this.engine = engine;
+			state = new RetimingState(new RetimingGraph(initGraph), allowShiftsGr1);
+			this.random = random;
+			this.moves = moves;
+			cost = SARetiming.getGraphCost(state.getGraph());
+			minCost = cost;
+			worstCost = cost;
+			bestII = state.longestPath();
+			worstII = bestII;
+			worstSum = state.shiftSum();
+			worstMax = state.shiftMax();
+			bestRetiming = new int[initGraph.size()];
+			state.getGraph().copyRetiming(bestRetiming);
+		}
+
+		public Void call() {
+			MoveSet moveSet = state.getMoves();
+			int i;
+			for (i = 0; i < moves; i++) {
+				if (i % SARetiming.CHECK_INTERVAL == 0 && engine.stopRequested()) {
+					break;
+				}
+				SARetiming.generateRandomMove(state, random, 0);
+				int node = moveSet.getNode();
+				int iterationShift = moveSet.getShift();
+				float newCost = SARetiming.getMoveCost(state, node, iterationShift, 0);
+				moveEvaluations++;
+				if (random.nextDouble() < Math.exp(-1000*(newCost - cost) / temp)) {
+					state.apply(node, iterationShift);
+					cost = newCost;
+					if (newCost < minCost) {
+						minCost = newCost;
+						state.getGraph().copyRetiming(bestRetiming);
+						bestII = state.longestPath();
+					}
+					worstII = Math.max(worstII, state.longestPath());
+					worstSum = Math.max(worstSum, state.shiftSum());
+					worstMax = Math.max(worstMax, state.shiftMax());
+					worstCost = Math.max(worstCost, newCost);
+				}
+			}
+			roundMoves = i;
+			return null;
+		}
+	}
+
+}
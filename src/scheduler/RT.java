@@ -64,4 +64,85 @@ public enum RT {
 			return RT.OTHER;
 		}
 	}
+	
+	private static final int MUL_FOUND = 1, ADD_FOUND = 2, DIV_FOUND = 4, SUB_FOUND = 8, SH_FOUND = 16,
+			AND_FOUND = 32, MEM_FOUND = 64, OR_FOUND = 128, CMP_FOUND = 256;
+	
+	/**
+	 * Same as {@link #getRT(String)} for the ASCII text text[start..end-1],
+	 * found in a single pass without creating a String.
+	 * @return the resource type. RT.OTHER if none was found
+	 */
+	public static RT getRT(byte[] text, int start, int end){
+		int found = 0;
+		for (int i = start; i < end; i++) {
+			switch (text[i]) {
+			case 'M':
+				if (matches(text, i, end, "MUL")) found |= MUL_FOUND;
+				else if (matches(text, i, end, "MEM")) found |= MEM_FOUND;
+				break;
+			case 'A':
+				if (matches(text, i, end, "ADD")) found |= ADD_FOUND;
+				else if (matches(text, i, end, "AND")) found |= AND_FOUND;
+				break;
+			case 'I':
+				if (matches(text, i, end, "INC")) found |= ADD_FOUND;
+				else if (matches(text, i, end, "IF")) found |= CMP_FOUND;
+				break;
+			case 'D':
+				if (matches(text, i, end, "DIV")) found |= DIV_FOUND;
+				break;
+			case 'S':
+				if (matches(text, i, end, "SUB")) found |= SUB_FOUND;
+				else if (matches(text, i, end, "SH")) found |= SH_FOUND;
+				else if (matches(text, i, end, "STORE")) found |= MEM_FOUND;
+				break;
+			case 'L':
+				if (matches(text, i, end, "LOAD")) found |= MEM_FOUND;
+				break;
+			case 'O':
+				if (matches(text, i, end, "OR")) found |= OR_FOUND;
+				break;
+			case 'C':
+				if (matches(text, i, end, "CMP")) found |= CMP_FOUND;
+				break;
+			default:
+				break;
+			}
+		}
+		// same precedence as getRT(String)
+		if ((found & MUL_FOUND) != 0) {
+			return RT.MUL;
+		} else if ((found & ADD_FOUND) != 0) {
+			return RT.ADD;
+		} else if ((found & DIV_FOUND) != 0) {
+			return RT.DIV;
+		} else if ((found & SUB_FOUND) != 0) {
+			return RT.SUB;
+		} else if ((found & SH_FOUND) != 0) {
+			return RT.SH;
+		} else if ((found & AND_FOUND) != 0) {
+			return RT.AND;
+		} else if ((found & MEM_FOUND) != 0) {
+			return RT.MEM;
+		} else if ((found & OR_FOUND) != 0) {
+			return RT.OR;
+		} else if ((found & CMP_FOUND) != 0) {
+			return RT.CMP;
+		} else {
+			return RT.OTHER;
+		}
+	}
+	
+	private static boolean matches(byte[] text, int i, int end, String word) {
+		if (end - i < word.length()) {
+			return false;
+		}
+		for (int k = 0; k < word.length(); k++) {
+			if (text[i + k] != word.charAt(k)) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
@@ -0,0 +1,393 @@
+package scheduler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import scheduler.SARetiming.SARetimingResultPackage;
+import scheduler.SARetiming.StopReason;
+
+/**
+ * Persistent cache of annealing results.
+ * <p>
+ * The key is a canonical hash of the graph plus every setting of the engine
+ * that changes the result: stop temperature, allowShiftsGr1, adaptive
+ * equilibrium, lower bound and seed, and {@link SARetiming#ALGORITHM_VERSION}
+ * so that a change of the annealing does not reuse old entries. The graph
+ * hash does not depend on the
+ * order of the nodes in the graph: nodes are hashed sorted by id with their
+ * resource type, then the edges with their weights. Only seeded engines
+ * are cached; before every run the engine is seeded again, so the result
+ * only depends on the key.
+ * <p>
+ * Every entry is one file in the cache directory holding the best retiming
+ * (by node id) and the metrics of the result package. On a hit the result
+ * graph is rebuilt from the retiming, and the retiming is set as the best
+ * retiming of the engine, as if it had run. The cache is bounded by the total
+ * size of its files; when a new entry exceeds the bound, the least
+ * recently used entries (by file modification time, which a hit updates)
+ * are deleted. Entries are written to a temporary file and moved into
+ * place, so several processes and threads may share one cache directory.
+ * <p>
+ * Only complete runs are stored, i.e. runs that stopped at the stop
+ * temperature or the lower bound. A cancelled run or one cut short by a
+ * deadline is not what a later run with the same key would return.
+ * <p>
+ * A result from the cache has {@link SARetimingResultPackage#cached} set.
+ * Its wallclock is the annealing time of the run that was stored, so run
+ * times written to the sweep results stay comparable between sweeps.
+ * <p>
+ * Main and Sweep seed their engines with the system property
+ * {@value #SEED_PROPERTY} if it is set (e.g. -Dscheduler.seed=1) and then
+ * run them through the cache in {@value #DEFAULT_DIRECTORY}, or in the
+ * directory given by {@value #DIRECTORY_PROPERTY}.
+ */
+public class ResultCache {
+
+	public static final String SEED_PROPERTY = "scheduler.seed";
+	public static final String DIRECTORY_PROPERTY = "scheduler.resultCache";
+	public static final String DEFAULT_DIRECTORY = "resultcache";
+	public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+	private static final int MAGIC = 0x52524331;
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".result";
+
+	private final File directory;
+	private final long maxBytes;
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+
+	/**
+	 * Cache in the directory given by the system property
+	 * {@value #DIRECTORY_PROPERTY}, {@value #DEFAULT_DIRECTORY} if it is not set.
+	 */
+	public ResultCache() {
+		this(System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY), DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * @param directory - directory of the cache files, created if needed
+	 * @param maxBytes - maximum total size of the cache files
+	 */
+	public ResultCache(String directory, long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("Cache size must be positive");
+		}
+		this.directory = new File(directory);
+		this.maxBytes = maxBytes;
+	}
+
+	public int getHits() {
+		return hits.get();
+	}
+
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the cached result of the engine's settings, or runs the engine
+	 * and caches its result if the run was complete. An engine without a
+	 * seed is just run.
+	 * @param sa - engine to run, seeded again with its seed before the run
+	 * @param print - passed to {@link SARetiming#run(int)}
+	 * @return the result
+	 */
+	public SARetimingResultPackage run(SARetiming sa, int print) {
+		if (!sa.isSeeded()) {
+			return sa.run(print);
+		}
+		Graph graph = sa.getGraph();
+		String key = key(sa);
+		File file = new File(directory, key + SUFFIX);
+		int[] retiming = new int[graph.size()];
+		SARetimingResultPackage result = read(file, key, graph, retiming);
+		if (result != null) {
+			sa.setBestRetiming(retiming);
+			hits.incrementAndGet();
+			file.setLastModified(System.currentTimeMillis());
+			result.cached = true;
+			return result;
+		}
+		misses.incrementAndGet();
+		sa.setSeed(sa.getSeed());
+		result = sa.run(print);
+		if (!isComplete(result.stopReason)) {
+			return result;
+		}
+		try {
+			write(file, key, graph, sa.getBestRetiming(), result);
+			evict();
+		} catch (IOException e) {
+			System.err.println("WARNING: Could not write result cache " + file + ": " + e.getMessage());
+		}
+		return result;
+	}
+
+	/**
+	 * @return true iff a run with this stop reason is the result of its key
+	 */
+	private static boolean isComplete(StopReason stopReason) {
+		return stopReason == StopReason.STOP_TEMP || stopReason == StopReason.LOWER_BOUND
+				|| stopReason == StopReason.OPTIMAL;
+	}
+
+	/**
+	 * @return the key of the engine's graph and settings as a hex string
+	 */
+	static String key(SARetiming sa) {
+		MessageDigest digest = sha256();
+		digest.update(graphHash(sa.getGraph()));
+		ByteArrayOutputStream settings = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(settings);
+		try {
+			out.writeFloat(sa.getStopTemp());
+			out.writeBoolean(sa.getAllowShiftsGr1());
+			out.writeBoolean(sa.getAdaptiveEquilibrium());
+			out.writeInt(sa.getLowerBound());
+			out.writeLong(sa.getSeed());
+			out.writeInt(SARetiming.ALGORITHM_VERSION);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update(settings.toByteArray());
+		return hex(digest.digest());
+	}
+
+	static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(2 * bytes.length);
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * @return SHA-256 of the nodes sorted by id with their resource types and of their edges with weights
+	 */
+	static byte[] graphHash(Graph graph) {
+		Node[] nodes = sortedNodes(graph);
+		Map<Node, Integer> index = new HashMap<Node, Integer>((int) (nodes.length * 1.5f));
+		for (int v = 0; v < nodes.length; v++) {
+			index.put(nodes[v], v);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(nodes.length);
+			for (Node node : nodes) {
+				out.writeUTF(node.id);
+				out.writeByte(node.getRT().ordinal());
+			}
+			for (Node node : nodes) {
+				Map<Node, Integer> successors = node.allSuccessors();
+				int[] edges = new int[2 * successors.size()];
+				int k = 0;
+				for (Map.Entry<Node, Integer> edge : successors.entrySet()) {
+					edges[k++] = index.get(edge.getKey());
+					edges[k++] = edge.getValue();
+				}
+				long[] sorted = new long[successors.size()];
+				for (k = 0; k < sorted.length; k++) {
+					sorted[k] = ((long) edges[2 * k] << 32) | (edges[2 * k + 1] & 0xffffffffL);
+				}
+				Arrays.sort(sorted);
+				out.writeInt(sorted.length);
+				for (long edge : sorted) {
+					out.writeLong(edge);
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return sha256().digest(bytes.toByteArray());
+	}
+
+	private static Node[] sortedNodes(Graph graph) {
+		Node[] nodes = new Node[graph.size()];
+		int v = 0;
+		for (Node node : graph) {
+			nodes[v++] = node;
+		}
+		Arrays.sort(nodes, new Comparator<Node>() {
+			public int compare(Node a, Node b) {
+				return a.id.compareTo(b.id);
+			}
+		});
+		return nodes;
+	}
+
+	private void write(File file, String key, Graph graph, int[] retiming, SARetimingResultPackage result) throws IOException {
+		RetimingGraph retimingGraph = new RetimingGraph(graph);
+		Map<String, Integer> shift = new HashMap<String, Integer>((int) (graph.size() * 1.5f));
+		for (int v = 0; v < retimingGraph.size(); v++) {
+			shift.put(retimingGraph.node(v).id, retiming[v]);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(key);
+		Node[] nodes = sortedNodes(graph);
+		out.writeInt(nodes.length);
+		for (Node node : nodes) {
+			out.writeInt(shift.get(node.id));
+		}
+		out.writeBoolean(result.foundLooseNodes);
+		out.writeInt(result.looseNodeShiftMax);
+		out.writeLong(result.wallclock);
+		out.writeFloat(result.initTemp);
+		out.writeFloat(result.stopTemp);
+		for (int value : new int[] { result.initII, result.worstII, result.saII, result.bestII,
+				result.initShiftSum, result.worstShiftSum, result.saShiftSum, result.bestShiftSum,
+				result.initShiftMax, result.worstShiftMax, result.saShiftMax, result.bestShiftMax }) {
+			out.writeInt(value);
+		}
+		for (float value : new float[] { result.initCost, result.worstCost, result.saCost, result.bestCost }) {
+			out.writeFloat(value);
+		}
+		out.writeLong(result.moveEvaluations);
+		out.writeInt(result.lowerBound);
+		out.writeUTF(result.stopReason.name());
+		out.writeInt(result.levelIterations.length);
+		for (int value : result.levelIterations) {
+			out.writeInt(value);
+		}
+		out.close();
+
+		Files.createDirectories(directory.toPath());
+		Path temp = Files.createTempFile(directory.toPath(), key, ".tmp");
+		try {
+			Files.write(temp, bytes.toByteArray());
+			Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * @param retiming - array of graph.size() elements, overwritten with the stored retiming
+	 * @return the cached result, null if there is no valid entry for the key
+	 */
+	private static SARetimingResultPackage read(File file, String key, Graph graph, int[] retiming) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key)) {
+				return null;
+			}
+			Node[] nodes = sortedNodes(graph);
+			if (in.readInt() != nodes.length) {
+				return null;
+			}
+			Map<String, Integer> shift = new HashMap<String, Integer>((int) (nodes.length * 1.5f));
+			for (Node node : nodes) {
+				shift.put(node.id, in.readInt());
+			}
+			RetimingGraph initRetimingGraph = new RetimingGraph(graph);
+			for (int v = 0; v < retiming.length; v++) {
+				retiming[v] = shift.get(initRetimingGraph.node(v).id);
+			}
+
+			boolean foundLooseNodes = in.readBoolean();
+			int looseNodeShiftMax = in.readInt();
+			long wallclock = in.readLong();
+			float initTemp = in.readFloat();
+			float stopTemp = in.readFloat();
+			int[] ints = new int[12];
+			for (int k = 0; k < ints.length; k++) {
+				ints[k] = in.readInt();
+			}
+			float[] costs = new float[4];
+			for (int k = 0; k < costs.length; k++) {
+				costs[k] = in.readFloat();
+			}
+			long moveEvaluations = in.readLong();
+			int lowerBound = in.readInt();
+			StopReason stopReason = StopReason.valueOf(in.readUTF());
+			int[] levelIterations = new int[in.readInt()];
+			for (int k = 0; k < levelIterations.length; k++) {
+				levelIterations[k] = in.readInt();
+			}
+			Graph bestGraph = new RetimingGraph(initRetimingGraph, retiming).toGraph();
+			return new SARetimingResultPackage(bestGraph, foundLooseNodes, looseNodeShiftMax,
+					wallclock, initTemp, stopTemp,
+					ints[0], ints[1], ints[2], ints[3],
+					ints[4], ints[5], ints[6], ints[7],
+					ints[8], ints[9], ints[10], ints[11],
+					costs[0], costs[1], costs[2], costs[3],
+					moveEvaluations, lowerBound, stopReason, levelIterations);
+		} catch (IOException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			// broken entry: unknown stop reason or illegal retiming
+			return null;
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries until the cache fits its size bound.
+	 */
+	private void evict() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		List<File> entries = new ArrayList<File>(files.length);
+		final Map<File, Long> lastUsed = new HashMap<File, Long>();
+		long total = 0;
+		for (File file : files) {
+			if (file.isFile() && file.getName().endsWith(SUFFIX)) {
+				entries.add(file);
+				lastUsed.put(file, file.lastModified());
+				total += file.length();
+			}
+		}
+		if (total <= maxBytes) {
+			return;
+		}
+		Collections.sort(entries, new Comparator<File>() {
+			public int compare(File a, File b) {
+				return Long.compare(lastUsed.get(a), lastUsed.get(b));
+			}
+		});
+		for (File file : entries) {
+			if (total <= maxBytes) {
+				break;
+			}
+			long length = file.length();
+			if (file.delete()) {
+				total -= length;
+			}
+		}
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
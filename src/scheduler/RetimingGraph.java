@@ -0,0 +1,345 @@
+package scheduler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Frozen, int-indexed view of a {@link Graph} used by the retiming algorithms.
+ * <p>
+ * Nodes are numbered 0..size()-1 and edges 0..edgeCount()-1. The topology is
+ * stored in compressed sparse row form for both directions and never changes.
+ * Only the edge weights (iteration distances) are mutable and are changed in
+ * place by {@link #shift(int, int)}. A {@link Graph} is only built again by
+ * {@link #toGraph()} when the result is handed back.
+ * <p>
+ * The sum and the maximum of all edge weights are kept up to date by
+ * {@link #shift(int, int)}: shifting node v by s changes the sum by
+ * s * (indeg(v) - outdeg(v)), the maximum is taken from a histogram of the
+ * weights. Edge weights must not become negative.
+ * <p>
+ * Every graph also knows its retiming r relative to the graph it was built
+ * from: the weight of an edge u -> v is its initial weight + r[v] - r[u].
+ * A solution can therefore be stored as a plain int[] and turned back into a
+ * graph with {@link #RetimingGraph(RetimingGraph, int[])}.
+ */
+public class RetimingGraph {
+
+	/**
+	 * Original nodes, indexed by node number
+	 */
+	private final Node[] nodes;
+	/**
+	 * Delay of each node
+	 */
+	final int[] delay;
+	/**
+	 * Outgoing edges of node v are the edge ids outStart[v] .. outStart[v+1]-1
+	 */
+	final int[] outStart;
+	/**
+	 * Incoming edges of node v are inEdge[inStart[v]] .. inEdge[inStart[v+1]-1]
+	 */
+	final int[] inStart;
+	final int[] inEdge;
+	/**
+	 * Source and target node of each edge
+	 */
+	final int[] source;
+	final int[] target;
+	/**
+	 * Weight of each edge in the graph this one was built from
+	 */
+	private final int[] initWeight;
+	/**
+	 * Current weight of each edge
+	 */
+	final int[] weight;
+	/**
+	 * Accumulated shift of each node
+	 */
+	private final int[] retiming;
+	/**
+	 * Number of edges with a given weight
+	 */
+	private int[] weightCount;
+	private int shiftSum;
+	private int shiftMax;
+
+	public RetimingGraph(Graph graph) {
+		int n = graph.size();
+		nodes = new Node[n];
+		delay = new int[n];
+		HashMap<Node, Integer> index = new HashMap<Node, Integer>((int) (n * 1.5f));
+		int v = 0;
+		for (Node node : graph) {
+			nodes[v] = node;
+			delay[v] = node.getDelay();
+			index.put(node, v);
+			v++;
+		}
+
+		outStart = new int[n + 1];
+		HashMap<Node, Integer>[] successors = newMapArray(n);
+		for (v = 0; v < n; v++) {
+			successors[v] = nodes[v].allSuccessors();
+			outStart[v + 1] = outStart[v] + successors[v].size();
+		}
+		int m = outStart[n];
+		source = new int[m];
+		target = new int[m];
+		weight = new int[m];
+		inStart = new int[n + 1];
+		int e = 0;
+		for (v = 0; v < n; v++) {
+			for (Node succ : successors[v].keySet()) {
+				int w = index.get(succ);
+				source[e] = v;
+				target[e] = w;
+				weight[e] = successors[v].get(succ);
+				inStart[w + 1]++;
+				e++;
+			}
+		}
+		for (v = 0; v < n; v++) {
+			inStart[v + 1] += inStart[v];
+		}
+		initWeight = weight.clone();
+		retiming = new int[n];
+		inEdge = new int[m];
+		int[] fill = new int[n];
+		for (e = 0; e < m; e++) {
+			int w = target[e];
+			inEdge[inStart[w] + fill[w]++] = e;
+		}
+		initShiftStatistics();
+	}
+
+	/**
+	 * Copies the given graph. The topology is shared, the edge weights are not.
+	 * @param other - graph to copy
+	 */
+	public RetimingGraph(RetimingGraph other) {
+		nodes = other.nodes;
+		delay = other.delay;
+		outStart = other.outStart;
+		inStart = other.inStart;
+		inEdge = other.inEdge;
+		source = other.source;
+		target = other.target;
+		initWeight = other.initWeight;
+		weight = other.weight.clone();
+		retiming = other.retiming.clone();
+		weightCount = other.weightCount.clone();
+		shiftSum = other.shiftSum;
+		shiftMax = other.shiftMax;
+	}
+
+	/**
+	 * Builds the graph with the given retiming. The topology is shared with
+	 * other, the retiming is relative to the graph other was built from.
+	 * @param other - graph to take the topology from
+	 * @param retiming - shift of each node
+	 */
+	public RetimingGraph(RetimingGraph other, int[] retiming) {
+		nodes = other.nodes;
+		delay = other.delay;
+		outStart = other.outStart;
+		inStart = other.inStart;
+		inEdge = other.inEdge;
+		source = other.source;
+		target = other.target;
+		initWeight = other.initWeight;
+		this.retiming = retiming.clone();
+		weight = new int[initWeight.length];
+		for (int e = 0; e < weight.length; e++) {
+			weight[e] = initWeight[e] + retiming[target[e]] - retiming[source[e]];
+			if (weight[e] < 0) {
+				throw new IllegalArgumentException("Retiming results in negative edge weight");
+			}
+		}
+		initShiftStatistics();
+	}
+
+	private void initShiftStatistics() {
+		shiftSum = 0;
+		shiftMax = 0;
+		for (int e = 0; e < weight.length; e++) {
+			shiftSum += weight[e];
+			shiftMax = Math.max(shiftMax, weight[e]);
+		}
+		weightCount = new int[shiftMax + 1];
+		for (int e = 0; e < weight.length; e++) {
+			weightCount[weight[e]]++;
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static HashMap<Node, Integer>[] newMapArray(int n) {
+		return new HashMap[n];
+	}
+
+	public int size() {
+		return nodes.length;
+	}
+
+	public int edgeCount() {
+		return weight.length;
+	}
+
+	public Node node(int v) {
+		return nodes[v];
+	}
+
+	public int getDelay(int v) {
+		return delay[v];
+	}
+
+	public int getWeight(int e) {
+		return weight[e];
+	}
+
+	/**
+	 * @return the accumulated shift of node v
+	 */
+	public int getRetiming(int v) {
+		return retiming[v];
+	}
+
+	/**
+	 * Copies the retiming of all nodes into dest.
+	 * @param dest - array of at least size() elements
+	 */
+	public void copyRetiming(int[] dest) {
+		System.arraycopy(retiming, 0, dest, 0, retiming.length);
+	}
+
+	/**
+	 * Shifts node v by s iterations: the weights of all incoming edges are
+	 * increased by s, the weights of all outgoing edges are decreased by s.
+	 * Self loops keep their weight. No legality check is done.
+	 * @param v - node to shift
+	 * @param s - iteration shift
+	 */
+	public void shift(int v, int s) {
+		for (int k = inStart[v]; k < inStart[v + 1]; k++) {
+			setWeight(inEdge[k], weight[inEdge[k]] + s);
+		}
+		for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+			setWeight(e, weight[e] - s);
+		}
+		shiftSum += s * (inStart[v + 1] - inStart[v] - (outStart[v + 1] - outStart[v]));
+		retiming[v] += s;
+		while (shiftMax > 0 && weightCount[shiftMax] == 0) {
+			shiftMax--;
+		}
+	}
+
+	private void setWeight(int e, int value) {
+		weightCount[weight[e]]--;
+		if (value >= weightCount.length) {
+			weightCount = Arrays.copyOf(weightCount, Math.max(value + 1, 2 * weightCount.length));
+		}
+		weightCount[value]++;
+		weight[e] = value;
+		if (value > shiftMax) {
+			shiftMax = value;
+		}
+	}
+
+	/**
+	 * Length (sum of node delays) of the longest path using only edges with weight 0.
+	 * The zero weighted edges must not form a cycle.
+	 * @return the achieved II of this graph
+	 */
+	public int longestZeroWeightedPath() {
+		return arrivalTimes(new int[nodes.length], new int[nodes.length]);
+	}
+
+	/**
+	 * Computes for every node the length of the longest zero weighted path
+	 * ending in it, including its own delay.
+	 * The zero weighted edges must not form a cycle.
+	 * @param arrival - array of at least size() elements, overwritten with the results
+	 * @param queue - array of at least size() elements, overwritten with the nodes in
+	 * topological order of the zero weighted edges
+	 * @return the maximum arrival time, i.e. the achieved II
+	 */
+	public int arrivalTimes(int[] arrival, int[] queue) {
+		int n = nodes.length;
+		Arrays.fill(arrival, 0, n, 0);
+		int[] pending = new int[n];
+		int head = 0, tail = 0;
+
+		for (int e = 0; e < weight.length; e++) {
+			if (weight[e] == 0) {
+				pending[target[e]]++;
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			if (pending[v] == 0) {
+				queue[tail++] = v;
+			}
+		}
+		int result = 0;
+		while (head < tail) {
+			int v = queue[head++];
+			arrival[v] += delay[v];
+			if (arrival[v] > result) {
+				result = arrival[v];
+			}
+			for (int e = outStart[v]; e < outStart[v + 1]; e++) {
+				if (weight[e] == 0) {
+					int w = target[e];
+					if (arrival[v] > arrival[w]) {
+						arrival[w] = arrival[v];
+					}
+					if (--pending[w] == 0) {
+						queue[tail++] = w;
+					}
+				}
+			}
+		}
+		if (tail < n) {
+			throw new IllegalArgumentException("Found cycle of zero weighted edges");
+		}
+		return result;
+	}
+
+	/**
+	 * @return the sum of all edge weights
+	 */
+	public int shiftSum() {
+		return shiftSum;
+	}
+
+	/**
+	 * @return the sum of all edge weights if node v was shifted by s
+	 */
+	public int shiftSumAfter(int v, int s) {
+		return shiftSum + s * (inStart[v + 1] - inStart[v] - (outStart[v + 1] - outStart[v]));
+	}
+
+	/**
+	 * @return the maximum edge weight, 0 for a graph without edges
+	 */
+	public int shiftMax() {
+		return shiftMax;
+	}
+
+	/**
+	 * Builds a new {@link Graph} with the current edge weights. Nodes are copied.
+	 * @return the new graph
+	 */
+	public Graph toGraph() {
+		Graph graph = new Graph();
+		Node[] copies = new Node[nodes.length];
+		for (int v = 0; v < nodes.length; v++) {
+			copies[v] = graph.add(new Node(nodes[v].id, nodes[v].getRT()));
+		}
+		for (int e = 0; e < weight.length; e++) {
+			graph.link(copies[source[e]], copies[target[e]], weight[e]);
+		}
+		return graph;
+	}
+
+}
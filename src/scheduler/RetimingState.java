@@ -0,0 +1,71 @@
+package scheduler;
+
+/**
+ * Current state of an annealing chain: a {@link RetimingGraph} together with
+ * its {@link LongestPathTracker} and {@link MoveSet}.
+ * <p>
+ * Candidate moves are scored with {@link #longestPathAfter(int, int)} and
+ * {@link #shiftSumAfter(int, int)} without touching the graph. Only accepted
+ * moves are applied with {@link #apply(int, int)}.
+ */
+public class RetimingState {
+
+	private final RetimingGraph graph;
+	private final LongestPathTracker tracker;
+	private final MoveSet moves;
+
+	/**
+	 * @param graph - graph to work on, is changed by {@link #apply(int, int)}
+	 * @param allowShiftsGr1 - allow moves resulting in edge weights > 1
+	 */
+	public RetimingState(RetimingGraph graph, boolean allowShiftsGr1) {
+		this.graph = graph;
+		tracker = new LongestPathTracker(graph);
+		moves = new MoveSet(graph, allowShiftsGr1);
+	}
+
+	public RetimingGraph getGraph() {
+		return graph;
+	}
+
+	public MoveSet getMoves() {
+		return moves;
+	}
+
+	public int longestPath() {
+		return tracker.longestPath();
+	}
+
+	public int shiftSum() {
+		return graph.shiftSum();
+	}
+
+	public int shiftMax() {
+		return graph.shiftMax();
+	}
+
+	/**
+	 * @return the longest zero weighted path if node v was shifted by s
+	 */
+	public int longestPathAfter(int v, int s) {
+		return tracker.evaluate(v, s);
+	}
+
+	/**
+	 * @return the shift sum if node v was shifted by s
+	 */
+	public int shiftSumAfter(int v, int s) {
+		return graph.shiftSumAfter(v, s);
+	}
+
+	/**
+	 * Shifts node v by s.
+	 * @param v - node to shift
+	 * @param s - iteration shift, has to be a legal move
+	 */
+	public void apply(int v, int s) {
+		tracker.apply(v, s);
+		moves.update(v);
+	}
+
+}
@@ -2,35 +2,75 @@ package scheduler;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Random;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
 
+/**
+ * Retiming by simulated annealing.
+ * <p>
+ * All state of a run lives in the SARetiming instance and the objects it
+ * creates, the static cost functions have no side effects. The input graph
+ * is only read. So any number of instances, also on the same graph, can run
+ * concurrently on different threads. A single instance must not be used by
+ * more than one thread at a time; use {@link #replica()} to get one engine
+ * per thread.
+ */
 public class SARetiming {
 	
 	public static final float DEFAULT_STOP_TEMP = .5f;
+	// version of the annealing, to be increased with every change that changes the result of a seeded run (part of the ResultCache key)
+	public static final int ALGORITHM_VERSION = 1;
 	// maximum change for the index shift of a node with either no predecessors or successors (so can be infinitely shifted)
 	public static final int LOOSE_NODE_SHIFT_MAX = 5;
 	
-	private static int lastLongestPath, lastShiftSum, lastShiftMax;
+	/**
+	 * Why a run ended
+	 */
+	public enum StopReason {
+		/** cooled down to the stop temperature */
+		STOP_TEMP,
+		/** the best graph reached the lower bound of the II and a whole temperature level brought no improvement */
+		LOWER_BOUND,
+		/** the time budget of {@link SARetiming#run(Duration)} ran out, or the cooling was cut short to meet it */
+		DEADLINE,
+		/** {@link SARetiming#cancel()} was called */
+		CANCELLED,
+		/** an exact engine proved the II optimal */
+		OPTIMAL
+	}
+	
+	// number of moves between two checks of the deadline and the cancel flag
+	static final int CHECK_INTERVAL = 1024;
 	
 	private final Graph initGraph;
-	private Graph bestGraph;
-	private Graph saGraph;
+	private final RetimingGraph initRetimingGraph;
+	private int[] bestRetiming;
+	private int[] saRetiming;
 	private float initTemp;
 	private float stopTemp;
 	private boolean allowShiftsGr1;
 	private int innerLoopIterations;
 	private boolean foundLooseNodes;
+	private SplittableRandom random;
+	private long seed;
+	private boolean seeded;
+	private int lowerBound;
+	private volatile boolean cancelled;
+	private boolean adaptiveEquilibrium;
 	
 	public SARetiming(Graph graph) {
+		this(graph, new RetimingGraph(graph));
+	}
+	private SARetiming(Graph graph, RetimingGraph retimingGraph) {
 		initGraph = graph;
+		initRetimingGraph = retimingGraph;
 		innerLoopIterations = (int) Math.round(10 * Math.pow(initGraph.size(), 4./3.));
 		allowShiftsGr1 = true;
 		foundLooseNodes = false;
 		stopTemp = DEFAULT_STOP_TEMP;
+		random = new SplittableRandom();
+		lowerBound = -1;
 	}
 	public void setAllowShiftsGr1(boolean allowShiftsGr1) {
 		this.allowShiftsGr1 = allowShiftsGr1;
@@ -38,104 +78,323 @@ public class SARetiming {
 	public void setStopTemp(float stopTemp) {
 		this.stopTemp = stopTemp;
 	}
+	/**
+	 * With adaptive equilibrium a temperature level ends as soon as an
+	 * {@link EquilibriumDetector} finds the chain settled, at the latest after
+	 * the fixed number of 10 * n^(4/3) moves. Off by default.
+	 * @param adaptiveEquilibrium - true to end temperature levels at equilibrium
+	 */
+	public void setAdaptiveEquilibrium(boolean adaptiveEquilibrium) {
+		this.adaptiveEquilibrium = adaptiveEquilibrium;
+	}
+	/**
+	 * @return number of moves per window of the equilibrium detection
+	 */
+	public int getEquilibriumWindow() {
+		return Math.max(innerLoopIterations / 10, 100);
+	}
+	/**
+	 * Sets the lower bound of the II at which the annealing may stop early.
+	 * By default it is computed from the graph on the first run.
+	 * @param lowerBound - lower bound of the achievable II, 0 to never stop early
+	 */
+	public void setLowerBound(int lowerBound) {
+		this.lowerBound = lowerBound;
+	}
+	/**
+	 * @return the lower bound of the II used for early termination
+	 */
+	public int getLowerBound() {
+		if (lowerBound < 0) {
+			lowerBound = lowerBound(initRetimingGraph);
+		}
+		return lowerBound;
+	}
+	/**
+	 * Seeds the random number generator of this engine. Consecutive runs
+	 * continue the same random sequence, so a series of runs started after
+	 * setSeed is reproducible.
+	 * @param seed - seed for the random number generator
+	 */
+	public void setSeed(long seed) {
+		random = new SplittableRandom(seed);
+		this.seed = seed;
+		seeded = true;
+	}
+	/**
+	 * @return true iff {@link #setSeed(long)} was called on this engine
+	 */
+	public boolean isSeeded() {
+		return seeded;
+	}
+	/**
+	 * @return the seed of the last {@link #setSeed(long)}
+	 */
+	public long getSeed() {
+		return seed;
+	}
+	public float getStopTemp() {
+		return stopTemp;
+	}
+	public boolean getAllowShiftsGr1() {
+		return allowShiftsGr1;
+	}
+	public boolean getAdaptiveEquilibrium() {
+		return adaptiveEquilibrium;
+	}
+	/**
+	 * @return the graph this engine retimes
+	 */
+	public Graph getGraph() {
+		return initGraph;
+	}
+	/**
+	 * @return the retiming of the best solution of the last run, relative to the input graph, null before the first run
+	 */
+	public int[] getBestRetiming() {
+		return bestRetiming == null ? null : bestRetiming.clone();
+	}
+	/**
+	 * Sets the best retiming as if a run had found it, used by {@link ResultCache} on a hit.
+	 * @param retiming - retiming relative to the input graph
+	 */
+	void setBestRetiming(int[] retiming) {
+		bestRetiming = retiming.clone();
+	}
+	/**
+	 * Creates an engine for the same graph and settings whose random number
+	 * generator is split off this engine's one. Replicas created in the same
+	 * order from a seeded engine always get the same random sequences, and
+	 * they can run in parallel.
+	 * @return the new engine
+	 */
+	public SARetiming replica() {
+		SARetiming replica = new SARetiming(initGraph, initRetimingGraph);
+		replica.allowShiftsGr1 = allowShiftsGr1;
+		replica.stopTemp = stopTemp;
+		replica.adaptiveEquilibrium = adaptiveEquilibrium;
+		replica.random = random.split();
+		replica.lowerBound = getLowerBound();
+		return replica;
+	}
+	
+	/**
+	 * Stops the current run as soon as possible, it then returns the best
+	 * solution found so far. May be called from any thread. If no run is in
+	 * progress, the next run stops right after it has started.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
 	
 	public SARetimingResultPackage run(int print) {
+		return run(Long.MAX_VALUE, print);
+	}
+	
+	/**
+	 * Anytime mode: anneals until the stop temperature or until the budget is
+	 * used up, whatever comes first. The cooling is sped up as far as needed
+	 * to reach the stop temperature in the remaining time, judging by the
+	 * time the temperature levels so far took. When the deadline expires in
+	 * the middle of a level, the best solution so far is returned.
+	 * @param budget - maximum wall-clock time of the run
+	 */
+	public SARetimingResultPackage run(Duration budget) {
+		return run(budget, 0);
+	}
+	public SARetimingResultPackage run(Duration budget, int print) {
+		long now = System.nanoTime();
+		long nanos = budget.isNegative() ? 0 : budget.toNanos();
+		return run(nanos < Long.MAX_VALUE - now ? now + nanos : Long.MAX_VALUE, print);
+	}
+	
+	/**
+	 * @param deadline - System.nanoTime() at which the run has to stop, Long.MAX_VALUE for none
+	 */
+	private SARetimingResultPackage run(long deadline, int print) {
 		foundLooseNodes = false;
-		float oldCost = getGraphCost(initGraph, print);
+		float oldCost = getGraphCost(initRetimingGraph, print);
 		float minCost = oldCost;
-		Graph bestGraph = initGraph;
+		int[] bestRetiming = new int[initRetimingGraph.size()];
 		float worstCost = oldCost;
-		int worstII = longestZeroWeightedPath(initGraph), worstSum = shiftSum(initGraph), worstMax = shiftMax(initGraph);
+		int worstII = longestZeroWeightedPath(initRetimingGraph), worstSum = shiftSum(initRetimingGraph), worstMax = shiftMax(initRetimingGraph);
 		if (print >= 1) {
-			System.out.println("Initial Achieved II = " + longestZeroWeightedPath(initGraph) + ". Initial shift sum = " + shiftSum(initGraph));
+			System.out.println("Initial Achieved II = " + longestZeroWeightedPath(initRetimingGraph) + ". Initial shift sum = " + shiftSum(initRetimingGraph));
 		}
 		
+		int lowerBound = getLowerBound();
+		StopReason stopReason = StopReason.STOP_TEMP;
+		int bestII = longestZeroWeightedPath(initRetimingGraph);
+		
 		long startTime = System.currentTimeMillis();
-		findInitTemp(print);
-		Graph graph = initGraph.clone();
+		AnnealingRunEvent runEvent = new AnnealingRunEvent();
+		runEvent.begin();
+		initTemp = findInitTemp(initRetimingGraph, allowShiftsGr1, random, print);
+		SAStatistics statistics = SAStatistics.get();
+		long run = statistics.runStarted(initRetimingGraph.size());
+		long allocated = statistics.allocatedBytes();
+		long acceptedTotal = 0, flushedMoves = 0, flushedAccepted = 0;
+		RetimingGraph graph = new RetimingGraph(initRetimingGraph);
+		RetimingState state = new RetimingState(graph, allowShiftsGr1);
+		MoveSet moves = state.getMoves();
+		foundLooseNodes = moves.foundLooseNodes();
+		long moveEvaluations = 0;
 		float temp = initTemp;
+		long loopStart = System.nanoTime();
+		int levels = 0;
+		int[] levelIterations = new int[16];
+		EquilibriumDetector equilibrium = adaptiveEquilibrium ? new EquilibriumDetector(getEquilibriumWindow()) : null;
 		
+		annealing:
 		while (temp > stopTemp) {
 			int acceptedChanges = 0;
+			boolean improved = false;
+			long levelStart = System.nanoTime();
+			TemperatureLevelEvent levelEvent = new TemperatureLevelEvent();
+			levelEvent.begin();
 			if (print >= 1) {
-				System.out.println("\tDoing " + innerLoopIterations + " loops with temperature " + temp);
+				System.out.println("\tDoing " + (equilibrium != null ? "up to " : "") + innerLoopIterations + " loops with temperature " + temp);
+			}
+			if (equilibrium != null) {
+				equilibrium.reset();
+			}
+			if (levels == levelIterations.length) {
+				levelIterations = Arrays.copyOf(levelIterations, 2 * levels);
 			}
 			
-			for (int cntInner = 0; cntInner < innerLoopIterations; cntInner++) {
-				RetimingMove move = generateRandomMove(graph, print);
-				move.execute();
-				float newCost = getGraphCost(graph, print);
+			int cntInner;
+			for (cntInner = 0; cntInner < innerLoopIterations; cntInner++) {
+				if (cntInner % CHECK_INTERVAL == 0) {
+					if (cancelled) {
+						cancelled = false;
+						stopReason = StopReason.CANCELLED;
+						levelIterations[levels++] = cntInner;
+						break annealing;
+					}
+					if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0) {
+						stopReason = StopReason.DEADLINE;
+						levelIterations[levels++] = cntInner;
+						break annealing;
+					}
+				}
+				generateRandomMove(state, random, print);
+				int node = moves.getNode();
+				int iterationShift = moves.getShift();
+				float newCost = getMoveCost(state, node, iterationShift, print);
+				moveEvaluations++;
 				float deltaCost = newCost - oldCost; // < 0: improvement
-				double r = Math.random();
+				double r = random.nextDouble();
 				double acceptProb = Math.exp(-1000*deltaCost / temp);
-				if (r < acceptProb) {
+				boolean accept = r < acceptProb;
+				if (accept) {
 					// accept candidate
+					state.apply(node, iterationShift);
 					oldCost = newCost;
 					acceptedChanges++;
+					acceptedTotal++;
 					if (print >= 2) {
 						System.out.println("\t\t\tAccepted move with probability " + (Math.round(100*acceptProb)) + "% (deltaC = " + deltaCost + ")");
 					}
 					
 					if (newCost < minCost) {
 						minCost = newCost; 
-						bestGraph = graph.clone();
+						graph.copyRetiming(bestRetiming);
+						bestII = state.longestPath();
+						improved = true;
 					}
-					if (lastLongestPath > worstII) {
-						worstII = lastLongestPath;
+					if (state.longestPath() > worstII) {
+						worstII = state.longestPath();
 					}
-					if (lastShiftSum > worstSum) {
-						worstSum = lastShiftSum;
+					if (state.shiftSum() > worstSum) {
+						worstSum = state.shiftSum();
 					}
-					if (shiftMax(graph) > worstMax) {
-						worstMax = lastShiftMax;
+					if (state.shiftMax() > worstMax) {
+						worstMax = state.shiftMax();
 					}
 					if (newCost > worstCost) {
 						worstCost = newCost;
 					}
 				} else if (print >= 2) {
-					move.reverse();
 					System.out.println("\t\t\tRejected move. r = " + r + " !< accProb = " + acceptProb);
 				}
+				if (equilibrium != null && equilibrium.add(oldCost, accept)) {
+					cntInner++;
+					break;
+				}
+			}
+			float alpha = (float) acceptedChanges / (float) cntInner;
+			float newTemp = updateTemp(temp, alpha, print);
+			levelIterations[levels++] = cntInner;
+			allocated = statistics.levelCompleted(levelEvent, run, levels, temp, cntInner, acceptedChanges,
+					System.nanoTime() - levelStart, allocated, oldCost, minCost, bestII);
+			flushedMoves += cntInner;
+			flushedAccepted += acceptedChanges;
+			if (print >= 1 && equilibrium != null && cntInner < innerLoopIterations) {
+				System.out.println("\t\tEquilibrium after " + cntInner + " loops");
+			}
+			if (deadline != Long.MAX_VALUE) {
+				float fittedTemp = fitToDeadline(temp, newTemp, loopStart, levels, deadline, print);
+				if (fittedTemp <= stopTemp && newTemp > stopTemp) {
+					// cooled down early to make the deadline
+					stopReason = StopReason.DEADLINE;
+				}
+				newTemp = fittedTemp;
 			}
-			float alpha = (float) acceptedChanges / (float) innerLoopIterations;
-			temp = updateTemp(temp, alpha, print);
+			temp = newTemp;
 			if (print >= 1) {
-				System.out.println("\t\tCurrent Achieved II = " + longestZeroWeightedPath(graph) + ". ShiftSum = " + shiftSum(graph));
+				System.out.println("\t\tCurrent Achieved II = " + state.longestPath() + ". ShiftSum = " + state.shiftSum());
+			}
+			if (bestII <= lowerBound && !improved) {
+				stopReason = StopReason.LOWER_BOUND;
+				break;
 			}
 		}
 		long wallclock = System.currentTimeMillis() - startTime;
 		
-		this.bestGraph = bestGraph;
-		this.saGraph = graph;
+		this.bestRetiming = bestRetiming;
+		this.saRetiming = new int[graph.size()];
+		graph.copyRetiming(saRetiming);
+		RetimingGraph bestGraph = new RetimingGraph(initRetimingGraph, bestRetiming);
 		
 		if (print >= 1) {
-			System.out.println("\n\nFinished with temperature:\t" + temp + " < " + stopTemp);
+			if (stopReason == StopReason.LOWER_BOUND) {
+				System.out.println("\n\nReached lower bound " + lowerBound + " at temperature:\t" + temp);
+			} else if (stopReason == StopReason.DEADLINE || stopReason == StopReason.CANCELLED) {
+				System.out.println("\n\nStopped (" + stopReason + ") at temperature:\t" + temp);
+			} else {
+				System.out.println("\n\nFinished with temperature:\t" + temp + " < " + stopTemp);
+			}
 			System.out.println("Initial temperature:\t\t" + initTemp + "\n");
 		}
 		
-		
-		return new SARetimingResultPackage(bestGraph, foundLooseNodes, LOOSE_NODE_SHIFT_MAX,
+		SARetimingResultPackage result = new SARetimingResultPackage(bestGraph.toGraph(), foundLooseNodes, LOOSE_NODE_SHIFT_MAX,
 				wallclock, initTemp, stopTemp,
-				longestZeroWeightedPath(initGraph), worstII, longestZeroWeightedPath(graph), longestZeroWeightedPath(bestGraph),
-				shiftSum(initGraph), worstSum, shiftSum(graph), shiftSum(bestGraph),
-				shiftMax(initGraph), worstMax, shiftMax(graph), shiftMax(bestGraph),
-				getGraphCost(initGraph), worstCost, getGraphCost(graph), getGraphCost(bestGraph));
+				longestZeroWeightedPath(initRetimingGraph), worstII, longestZeroWeightedPath(graph), longestZeroWeightedPath(bestGraph),
+				shiftSum(initRetimingGraph), worstSum, shiftSum(graph), shiftSum(bestGraph),
+				shiftMax(initRetimingGraph), worstMax, shiftMax(graph), shiftMax(bestGraph),
+				getGraphCost(initRetimingGraph), worstCost, getGraphCost(graph), getGraphCost(bestGraph),
+				moveEvaluations, lowerBound, stopReason, Arrays.copyOf(levelIterations, levels));
+		statistics.runCompleted(runEvent, run, (int) (moveEvaluations - flushedMoves), (int) (acceptedTotal - flushedAccepted), result);
+		return result;
 	}
 	
-	private void findInitTemp(int print) {
+	/**
+	 * Estimates the initial temperature from the cost spread of random moves
+	 * on the given graph. The graph is not changed.
+	 */
+	static float findInitTemp(RetimingGraph initRetimingGraph, boolean allowShiftsGr1, SplittableRandom random, int print) {
 		float initTemp;
-		Graph graph = initGraph.clone();
+		RetimingState state = new RetimingState(new RetimingGraph(initRetimingGraph), allowShiftsGr1);
 		
 		int tries = 0;
 		while (true) {
-			int n = initGraph.size();
+			int n = initRetimingGraph.size();
 			float[] costs = new float[n];
 			float average = 0f;
 			for (int i = 0; i < n; i++) {
-				RetimingMove move = generateRandomMove(graph, print);
-				move.execute();
-				float cost = getGraphCost(graph, print);
-				move.reverse();
+				generateRandomMove(state, random, print);
+				MoveSet moves = state.getMoves();
+				float cost = getMoveCost(state, moves.getNode(), moves.getShift(), print);
 				costs[i] = cost;
 				average += cost;
 			}
@@ -169,7 +428,7 @@ public class SARetiming {
 			}
 		}
 		
-		this.initTemp = initTemp;
+		return initTemp;
 	}
 	
 	private float updateTemp(float temp, float alpha, int print) {
@@ -189,93 +448,70 @@ public class SARetiming {
 	}
 	
 	
-	private RetimingMove generateRandomMove(Graph graph, int print) {
-		List<RetimingMove> possibleMoves = getPossibleMoves(graph);
-		int moveIndex = new Random().nextInt(possibleMoves.size());
-		RetimingMove move = possibleMoves.get(moveIndex);
-		
-		if (print >= 2) {
-			System.out.println("\t\tGenerated random " + move);
+	/**
+	 * Speeds up the cooling if the stop temperature would not be reached
+	 * before the deadline at the current rate. The remaining number of
+	 * levels is estimated from the average duration of the levels so far.
+	 * @return the next temperature
+	 */
+	private float fitToDeadline(float temp, float newTemp, long loopStart, int levels, long deadline, int print) {
+		long now = System.nanoTime();
+		double perLevel = (double) (now - loopStart) / levels;
+		double affordable = Math.floor((deadline - now) / perLevel);
+		if (affordable < 1) {
+			newTemp = Math.min(newTemp, stopTemp);
+		} else {
+			// cooling factor that reaches stopTemp in the affordable number of levels
+			float y = (float) Math.pow(stopTemp / temp, 1 / affordable);
+			newTemp = Math.min(newTemp, temp * y);
 		}
-		
-		return move;
+		if (print >= 1) {
+			System.out.println("\t\tTime for about " + (long) affordable + " more levels. Next temperature " + newTemp);
+		}
+		return newTemp;
 	}
 	
-	private List<RetimingMove> getPossibleMoves(Graph graph) {
-		List<RetimingMove> result = new ArrayList<RetimingMove>();
+	/**
+	 * Draws a random legal move into the MoveSet of the given state.
+	 */
+	static void generateRandomMove(RetimingState state, SplittableRandom random, int print) {
+		MoveSet moves = state.getMoves();
+		moves.sample(random);
 		
-		for (Node node : graph) {
-			int minIn = Integer.MAX_VALUE;
-			int maxIn = Integer.MIN_VALUE;
-			for (Integer weight : node.allPredecessors().values()) {
-				if (weight < minIn) {
-					minIn = weight;
-				}
-				if (weight > maxIn) {
-					maxIn = weight;
-				}
-			}
-			int minOut = Integer.MAX_VALUE;
-			int maxOut = Integer.MIN_VALUE;
-			for (Integer weight : node.allSuccessors().values()) {
-				if (weight < minOut) {
-					minOut = weight;
-				}
-				if (weight > maxOut) {
-					maxOut = weight;
-				}
-			}
-
-			if (minIn == Integer.MAX_VALUE || maxIn == Integer.MIN_VALUE) {
-				// no incoming edges
-				foundLooseNodes = true;
-				if (allowShiftsGr1) {
-					minIn = LOOSE_NODE_SHIFT_MAX;
-				} else {
-					minIn = minOut;
-					maxIn = -minOut;
-				}
-			}
-			if (minOut == Integer.MAX_VALUE || maxOut == Integer.MIN_VALUE) {
-				// no outgoing edges
-				foundLooseNodes = true;
-				if (allowShiftsGr1) {
-					minOut = LOOSE_NODE_SHIFT_MAX;
-				} else {
-					minOut = minIn;
-					maxOut = -minIn;
-				}
-			}
-			int oldMaxShift = maxIn > maxOut ? maxIn : maxOut;
-			
-			for (int iterShift = -minIn; iterShift <= minOut; iterShift++) {
-				int newMaxIn = maxIn + iterShift;
-				int newMaxOut = maxOut - iterShift;
-				int newMaxShift = newMaxIn > newMaxOut ? newMaxIn : newMaxOut;
-				
-				if (iterShift == 0) {
-					continue;
-				}
-				if (!allowShiftsGr1 && (newMaxShift > oldMaxShift && newMaxShift > 1)) {
-					// reject moves that worsen the maxShift AND result in a maxShift > 1
-					// moves that improve the maxShift (of the node in question) OR have a maxShift of 1 are accepted
-					// moves that don't change the maxShift are accepted as well
-					continue;
-				}
-				result.add(new RetimingMove(node, new Integer(iterShift)));
-			}
+		if (print >= 2) {
+			System.out.println("\t\tGenerated random RetimingMove: Node " + state.getGraph().node(moves.getNode()).id + ", shift " + moves.getShift());
 		}
-		
-		return result;
 	}
 	
 	
+	/**
+	 * Lower bound of the achievable II: no retiming gets below the largest
+	 * node delay or the recurrence bound computed by {@link CycleRatio}.
+	 */
+	static int lowerBound(RetimingGraph retimingGraph) {
+		int bound = new CycleRatio(retimingGraph).getRecMII();
+		for (int v = 0; v < retimingGraph.size(); v++) {
+			bound = Math.max(bound, retimingGraph.getDelay(v));
+		}
+		return bound;
+	}
+	
 	public static float getGraphCost(Graph graph) {
-		return getGraphCost(graph, 0);
+		return getGraphCost(new RetimingGraph(graph), 0);
 	}
 	public static float getGraphCost(Graph graph, int print) {
-		float achievedII = longestZeroWeightedPath(graph);
-		float shiftSum = shiftSum(graph);
+		return getGraphCost(new RetimingGraph(graph), print);
+	}
+	static float getGraphCost(RetimingGraph graph) {
+		return getGraphCost(graph, 0);
+	}
+	private static float getGraphCost(RetimingGraph graph, int print) {
+		return getGraphCost(longestZeroWeightedPath(graph), shiftSum(graph), print);
+	}
+	static float getMoveCost(RetimingState state, int node, int iterationShift, int print) {
+		return getGraphCost(state.longestPathAfter(node, iterationShift), state.shiftSumAfter(node, iterationShift), print);
+	}
+	private static float getGraphCost(float achievedII, float shiftSum, int print) {
 		float weightedShiftSum = (float) (1 - Math.exp(-shiftSum/1000000f));
 		if (weightedShiftSum >= 1f) {
 			System.err.println("Warning: shift sum too big for scaling factor");
@@ -290,51 +526,23 @@ public class SARetiming {
 	}
 	
 	public static int longestZeroWeightedPath(Graph graph) {
-		int result = 0;
-		Map<Node, Integer> visited = new HashMap<Node, Integer>((int) (graph.size() * 1.5f));
-		for (Node node : graph) {
-			int lengthFromNode = longestPathFromNode(node, visited); 
-			if (lengthFromNode > result) {
-				result = lengthFromNode;
-			}
-		}
-		lastLongestPath = result;
-		return result;
+		return longestZeroWeightedPath(new RetimingGraph(graph));
 	}
-	private static int longestPathFromNode(Node node, Map<Node, Integer> visited) {
-		if (visited.containsKey(node)) {
-			return visited.get(node);
-		}
-		int result = 0;
-		for (Node successor : node.successors()) {
-			int lengthFromNode = longestPathFromNode(successor, visited);
-			if (lengthFromNode > result) {
-				result = lengthFromNode;
-			}
-		}
-		visited.put(node, result);
-		return result + node.getDelay();
+	static int longestZeroWeightedPath(RetimingGraph graph) {
+		return graph.longestZeroWeightedPath();
 	}
 	
 	public static int shiftSum(Graph graph) {
-		int result = 0;
-		for (Node node : graph) {
-			for (Node successor : node.allSuccessors().keySet()) {
-				result += node.allSuccessors().get(successor);
-			}
-		}
-		lastShiftSum = result;
-		return result;
+		return shiftSum(new RetimingGraph(graph));
+	}
+	static int shiftSum(RetimingGraph graph) {
+		return graph.shiftSum();
 	}
 	public static int shiftMax(Graph graph) {
-		int result = 0;
-		for (Node node : graph) {
-			for (Node successor : node.allSuccessors().keySet()) {
-				result = Math.max(result, node.allSuccessors().get(successor));
-			}
-		}
-		lastShiftMax = result;
-		return result;
+		return shiftMax(new RetimingGraph(graph));
+	}
+	static int shiftMax(RetimingGraph graph) {
+		return graph.shiftMax();
 	}
 	
 	public void evaluate(String filename, float calcTime) {
@@ -342,8 +550,8 @@ public class SARetiming {
 			int initGraphII, bestGraphII, saGraphII;
 			
 			initGraphII = longestZeroWeightedPath(initGraph);
-			bestGraphII = longestZeroWeightedPath(bestGraph);
-			saGraphII = longestZeroWeightedPath(saGraph);
+			bestGraphII = longestZeroWeightedPath(new RetimingGraph(initRetimingGraph, bestRetiming));
+			saGraphII = longestZeroWeightedPath(new RetimingGraph(initRetimingGraph, saRetiming));
 			
 			String[] arguments = filename.split("/");
 			String file = arguments[arguments.length-1];
@@ -361,84 +569,7 @@ public class SARetiming {
 		}
 	}
 	
-	private class RetimingMove {
-		
-		private final Node node;
-		private final int iterationShift;
-		private boolean wasExecuted;
-		
-		public RetimingMove(final Node node, final int iterationShift) {
-			this.node = node;
-			this.iterationShift = iterationShift;
-			wasExecuted = false;
-		}
-		
-		private boolean isMoveValid(Node node, int iterationShift) {
-			for (Node predecessor : node.allPredecessors().keySet()) {
-				int newWeight = node.allPredecessors().get(predecessor).intValue() + iterationShift;
-				if (newWeight < 0) {
-					return false;
-				}
-			}
-			for (Node successor : node.allSuccessors().keySet()) {
-				int newWeight = node.allSuccessors().get(successor).intValue() - iterationShift;
-				if (newWeight < 0) {
-					return false;
-				}
-			}
-			
-			return true;
-		}
-		
-		public boolean execute() {
-			if (!isMoveValid(node, iterationShift) || wasExecuted) {
-				System.err.println("Warning: Move not valid or already executed");
-				return false;
-			}
-			
-			for (Node predecessor : node.allPredecessors().keySet()) {
-				Integer newWeight = node.allPredecessors().get(predecessor).intValue() + iterationShift;
-				node.prepend(predecessor, newWeight);
-				predecessor.append(node, newWeight);
-			}
-			for (Node successor : node.allSuccessors().keySet()) {
-				Integer newWeight = node.allSuccessors().get(successor).intValue() - iterationShift;
-				node.append(successor, newWeight);
-				successor.prepend(node, newWeight);
-			}
-			
-			wasExecuted = true;
-			return true;
-		}
-		
-		public boolean reverse() {
-			if (!wasExecuted) {
-				System.err.println("Warning: Move has not yet been executed, couldn't be reversed");
-				return false;
-			}
-			
-			for (Node predecessor : node.allPredecessors().keySet()) {
-				Integer oldWeight = node.allPredecessors().get(predecessor).intValue() - iterationShift;
-				node.allPredecessors().put(predecessor, oldWeight);
-				predecessor.allSuccessors().put(node, oldWeight);
-			}
-			for (Node successor : node.allSuccessors().keySet()) {
-				Integer oldWeight = node.allSuccessors().get(successor).intValue() + iterationShift;
-				node.allSuccessors().put(successor, oldWeight);
-				successor.allPredecessors().put(node, oldWeight);
-			}
-			
-			wasExecuted = false;
-			return true;
-		}
-		
-		public String toString() {
-			return "RetimingMove: Node " + node.id + ", shift " + iterationShift;
-		}
-		
-	}
-	
-	public class SARetimingResultPackage {
+	public static class SARetimingResultPackage {
 		
 		public final Graph graph;
 		public final int graphSize;
@@ -453,13 +584,25 @@ public class SARetiming {
 		public final int initShiftSum, worstShiftSum, saShiftSum, bestShiftSum;
 		public final int initShiftMax, worstShiftMax, saShiftMax, bestShiftMax;
 		public final float initCost, worstCost, saCost, bestCost;
+		public final long moveEvaluations;
+		public final int lowerBound;
+		public final StopReason stopReason;
+		/**
+		 * Number of moves done at each temperature level
+		 */
+		public final int[] levelIterations;
+		/**
+		 * True if the result was taken from a {@link ResultCache}, wallclock is then the time of the stored run
+		 */
+		public boolean cached;
 		
 		public SARetimingResultPackage (Graph graph, boolean foundLooseNodes, int looseNodeShiftMax,
 				long wallclock, float initTemp, float stopTemp,
 				int initII, int worstII, int saII, int bestII,
 				int initShiftSum, int worstShiftSum, int saShiftSum, int bestShiftSum,
 				int initShiftMax, int worstShiftMax, int saShiftMax, int bestShiftMax,
-				float initCost, float worstCost, float saCost, float bestCost) {
+				float initCost, float worstCost, float saCost, float bestCost,
+				long moveEvaluations, int lowerBound, StopReason stopReason, int[] levelIterations) {
 			this.graph = graph;
 			this.graphSize = graph.size();
 			this.foundLooseNodes = foundLooseNodes;
@@ -485,6 +628,10 @@ public class SARetiming {
 			this.worstCost = worstCost;
 			this.saCost = saCost;
 			this.bestCost = bestCost;
+			this.moveEvaluations = moveEvaluations;
+			this.lowerBound = lowerBound;
+			this.stopReason = stopReason;
+			this.levelIterations = levelIterations;
 		}
 		
 		public void printDiagnose() {
@@ -495,19 +642,21 @@ public class SARetiming {
 			System.out.println("Best\t" + bestII + "\t" + bestShiftSum + "\t" + bestShiftMax + "\t" + bestCost);
 			System.out.println("\nWorst values do not necessarily come from the same graph.\n");
 			
-			if (graph.size() < 200) {
-				System.out.println("MinII:\t" + minII.getMinII(graph, false));
+			System.out.println("MinII:\t" + minII.getRecMII(graph));
+			if (stopReason == StopReason.LOWER_BOUND) {
+				System.out.println("Stopped early: best II reached the lower bound " + lowerBound);
 			}
+			System.out.println("Temperature levels: " + levelIterations.length + ", moves per level: " + Arrays.toString(levelIterations));
 			if (bestII < saII) {
 				System.out.println("Caution: the best found solution wasn't delivered by SA!");
 			}
 			if (foundLooseNodes) {
 				System.out.println("Caution: Found loose node (no predecessors and/or successors). Used max shift " + LOOSE_NODE_SHIFT_MAX);
 			}
-			System.out.println("\nCalculation time: " + ((float) wallclock / 1000f) + "s");
+			System.out.println("\nCalculation time: " + ((float) wallclock / 1000f) + "s" + (cached ? " (cached result, time of the stored run)" : ""));
 			System.out.println("\n\n\n");
 		}
 		
 	}
 	
-}
\ No newline at end of file
+}
\ No newline at end of file
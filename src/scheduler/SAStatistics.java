@@ -0,0 +1,252 @@
+package scheduler;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Always-on counters of all {@link SARetiming} runs in this JVM, exported
+ * as the MBean {@value #OBJECT_NAME} and as the JFR events
+ * {@link TemperatureLevelEvent} and {@link AnnealingRunEvent}.
+ * <p>
+ * The annealing loop only counts in local variables as before. The
+ * counters here are updated once per temperature level, which takes
+ * thousands of moves, so the cost does not show in the run time. The JFR
+ * events only fill in their fields while a recording has them enabled.
+ * <p>
+ * With several engines running at the same time the counters are their
+ * sums and the "last" values and the best cost timeline come from whichever
+ * level ended last; the JFR events carry the run number to tell the runs
+ * apart.
+ */
+public class SAStatistics implements SAStatisticsMBean {
+
+	public static final String OBJECT_NAME = "scheduler:type=SAStatistics";
+	// number of temperature levels in the best cost timeline
+	public static final int TIMELINE_LENGTH = 256;
+
+	private static final SAStatistics INSTANCE = new SAStatistics();
+
+	private final com.sun.management.ThreadMXBean threads;
+
+	private final AtomicLong runsStarted = new AtomicLong();
+	private final LongAdder runsCompleted = new LongAdder();
+	private final LongAdder movesProposed = new LongAdder();
+	private final LongAdder movesAccepted = new LongAdder();
+	private final LongAdder probes = new LongAdder();
+	private final LongAdder levels = new LongAdder();
+	private final LongAdder levelNanos = new LongAdder();
+	private final LongAdder allocatedBytes = new LongAdder();
+
+	// written under the lock of timeline
+	private final float[] timeline = new float[TIMELINE_LENGTH];
+	private final long[] timestamps = new long[TIMELINE_LENGTH];
+	private long timelineEnd;
+	private volatile long lastLevelNanos;
+	private volatile float lastTemperature;
+	private volatile float lastBestCost;
+
+	private SAStatistics() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			threads = (com.sun.management.ThreadMXBean) bean;
+			threads.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			threads = null;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		} catch (JMException e) {
+			System.err.println("WARNING: Could not register " + OBJECT_NAME + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the statistics of this JVM, registered as MBean on first use
+	 */
+	public static SAStatistics get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Counts a new run.
+	 * @param probes - cost evaluations to find the initial temperature
+	 * @return the number of the run
+	 */
+	long runStarted(int probes) {
+		this.probes.add(probes);
+		return runsStarted.incrementAndGet();
+	}
+
+	/**
+	 * @return heap bytes allocated by the current thread so far, -1 if not supported
+	 */
+	long allocatedBytes() {
+		return threads == null ? -1 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Counts a completed temperature level and commits its event.
+	 * @param event - event begun at the start of the level
+	 * @param allocatedBefore - {@link #allocatedBytes()} at the start of the level
+	 * @return {@link #allocatedBytes()} now, for the next level
+	 */
+	long levelCompleted(TemperatureLevelEvent event, long run, int level, float temperature, int proposed, int accepted,
+			long nanos, long allocatedBefore, float cost, float bestCost, int bestII) {
+		long allocatedAfter = allocatedBytes();
+		long allocated = allocatedBefore >= 0 ? allocatedAfter - allocatedBefore : -1;
+		movesProposed.add(proposed);
+		movesAccepted.add(accepted);
+		levels.increment();
+		levelNanos.add(nanos);
+		if (allocated > 0) {
+			allocatedBytes.add(allocated);
+		}
+		lastLevelNanos = nanos;
+		lastTemperature = temperature;
+		lastBestCost = bestCost;
+		synchronized (timeline) {
+			int slot = (int) (timelineEnd++ % TIMELINE_LENGTH);
+			timeline[slot] = bestCost;
+			timestamps[slot] = System.currentTimeMillis();
+		}
+		if (event.shouldCommit()) {
+			event.run = run;
+			event.level = level;
+			event.temperature = temperature;
+			event.proposed = proposed;
+			event.accepted = accepted;
+			event.cost = cost;
+			event.bestCost = bestCost;
+			event.bestII = bestII;
+			event.allocated = allocated;
+			event.commit();
+		}
+		return allocatedAfter;
+	}
+
+	/**
+	 * Counts a completed run and commits its event.
+	 * @param event - event begun at the start of the run
+	 * @param proposed - moves of a level cut short by cancel or deadline, which was not counted by {@link #levelCompleted}
+	 * @param accepted - accepted moves of that level
+	 */
+	void runCompleted(AnnealingRunEvent event, long run, int proposed, int accepted, SARetiming.SARetimingResultPackage result) {
+		movesProposed.add(proposed);
+		movesAccepted.add(accepted);
+		runsCompleted.increment();
+		if (event.shouldCommit()) {
+			event.run = run;
+			event.graphSize = result.graphSize;
+			event.initTemp = result.initTemp;
+			event.levels = result.levelIterations.length;
+			event.moveEvaluations = result.moveEvaluations;
+			event.initII = result.initII;
+			event.bestII = result.bestII;
+			event.bestCost = result.bestCost;
+			event.stopReason = result.stopReason.name();
+			event.commit();
+		}
+	}
+
+	public long getRunsStarted() {
+		return runsStarted.get();
+	}
+
+	public long getRunsCompleted() {
+		return runsCompleted.sum();
+	}
+
+	public long getMovesProposed() {
+		return movesProposed.sum();
+	}
+
+	public long getMovesAccepted() {
+		return movesAccepted.sum();
+	}
+
+	public double getAcceptanceRate() {
+		long proposed = movesProposed.sum();
+		return proposed == 0 ? 0 : (double) movesAccepted.sum() / proposed;
+	}
+
+	public long getCostEvaluations() {
+		return movesProposed.sum() + probes.sum();
+	}
+
+	public long getTemperatureLevels() {
+		return levels.sum();
+	}
+
+	public double getMeanLevelTime() {
+		long count = levels.sum();
+		return count == 0 ? 0 : levelNanos.sum() / 1e6 / count;
+	}
+
+	public double getLastLevelTime() {
+		return lastLevelNanos / 1e6;
+	}
+
+	public float getLastTemperature() {
+		return lastTemperature;
+	}
+
+	public float getLastBestCost() {
+		return lastBestCost;
+	}
+
+	public float[] getBestCostTimeline() {
+		synchronized (timeline) {
+			int length = (int) Math.min(timelineEnd, TIMELINE_LENGTH);
+			float[] result = new float[length];
+			for (int k = 0; k < length; k++) {
+				result[k] = timeline[(int) ((timelineEnd - length + k) % TIMELINE_LENGTH)];
+			}
+			return result;
+		}
+	}
+
+	public long[] getBestCostTimestamps() {
+		synchronized (timeline) {
+			int length = (int) Math.min(timelineEnd, TIMELINE_LENGTH);
+			long[] result = new long[length];
+			for (int k = 0; k < length; k++) {
+				result[k] = timestamps[(int) ((timelineEnd - length + k) % TIMELINE_LENGTH)];
+			}
+			return result;
+		}
+	}
+
+	public long getAllocatedBytes() {
+		return threads == null ? -1 : allocatedBytes.sum();
+	}
+
+	public double getAllocationRate() {
+		long nanos = levelNanos.sum();
+		if (threads == null) {
+			return -1;
+		}
+		return nanos == 0 ? 0 : allocatedBytes.sum() * 1e9 / nanos;
+	}
+
+	public void reset() {
+		runsStarted.set(0);
+		runsCompleted.reset();
+		movesProposed.reset();
+		movesAccepted.reset();
+		probes.reset();
+		levels.reset();
+		levelNanos.reset();
+		allocatedBytes.reset();
+		synchronized (timeline) {
+			timelineEnd = 0;
+		}
+		lastLevelNanos = 0;
+		lastTemperature = 0;
+		lastBestCost = 0;
+	}
+
+}
@@ -0,0 +1,71 @@
+package scheduler;
+
+/**
+ * Management interface of {@link SAStatistics}, registered as
+ * {@value SAStatistics#OBJECT_NAME}.
+ */
+public interface SAStatisticsMBean {
+
+	long getRunsStarted();
+
+	long getRunsCompleted();
+
+	long getMovesProposed();
+
+	long getMovesAccepted();
+
+	/**
+	 * @return accepted moves per proposed move
+	 */
+	double getAcceptanceRate();
+
+	/**
+	 * @return move cost evaluations, including those for the initial temperature
+	 */
+	long getCostEvaluations();
+
+	long getTemperatureLevels();
+
+	/**
+	 * @return mean wall-clock time of a temperature level in milliseconds
+	 */
+	double getMeanLevelTime();
+
+	/**
+	 * @return wall-clock time of the last temperature level in milliseconds
+	 */
+	double getLastLevelTime();
+
+	float getLastTemperature();
+
+	/**
+	 * @return best cost at the end of the last temperature level
+	 */
+	float getLastBestCost();
+
+	/**
+	 * @return best costs at the end of the latest temperature levels, oldest first
+	 */
+	float[] getBestCostTimeline();
+
+	/**
+	 * @return System.currentTimeMillis() at the end of the levels of {@link #getBestCostTimeline()}
+	 */
+	long[] getBestCostTimestamps();
+
+	/**
+	 * @return heap bytes allocated by annealing threads during the temperature levels, -1 if not supported
+	 */
+	long getAllocatedBytes();
+
+	/**
+	 * @return allocated bytes per second of level time, -1 if not supported
+	 */
+	double getAllocationRate();
+
+	/**
+	 * Sets all counters to zero and clears the timeline.
+	 */
+	void reset();
+
+}
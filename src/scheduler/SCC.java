@@ -1,31 +1,44 @@
 package scheduler;
 
-import java.util.Vector;
-
+import java.util.Arrays;
+
+/**
+ * Strongly connected components by Tarjan's algorithm.
+ * <p>
+ * The depth first search is iterative and works on int[] stacks with an
+ * on-stack bitset, so deep graphs cannot overflow the call stack and every
+ * call of {@link #findComponents(int)} is a single O(V+E) pass. The working
+ * arrays are allocated once per SCC object and reused.
+ */
 public class SCC {
+	private static final int[] NO_SUCCESSORS = new int[0];
+
 	/** Adjacency-list of original graph */
-	private int[][] adjListOriginal = null;
+	private final int[][] adjList;
+
+	/** Discovery index of each node, -1 if not visited yet */
+	private final int[] index;
+
+	/** Lowest discovery index reachable from each node */
+	private final int[] lowlink;
 
-	/** Adjacency-list of currently viewed subgraph */
-	private int[][] adjList = null;
-	
-	/** Helpattribute for finding scc's */
-	private boolean[] visited = null;
+	/** Tarjan stack of visited nodes not yet assigned to a component */
+	private final int[] stack;
 
-	/** Helpattribute for finding scc's */
-	private Vector<Integer> stack = null;
+	/** Bitset of the nodes on the Tarjan stack */
+	private final long[] onStack;
 
-	/** Helpattribute for finding scc's */
-	private int[] lowlink = null;
+	/** Depth first search path and the next edge to follow for each node */
+	private final int[] path;
+	private final int[] nextEdge;
 
-	/** Helpattribute for finding scc's */
-	private int[] number = null;
+	/** Component of each node, -1 for nodes outside the searched subgraph */
+	private final int[] component;
 
-	/** Helpattribute for finding scc's */
-	private int sccCounter = 0;
+	/** Number of nodes in each component */
+	private final int[] componentSize;
 
-	/** Helpattribute for finding scc's */
-	private Vector<Vector<Integer>> currentSCCs = null;
+	private int componentCount;
 
 	/**
 	 * Constructor.
@@ -33,169 +46,155 @@ public class SCC {
 	 * @param adjList adjacency-list of the graph
 	 */
 	public SCC(int[][] adjList) {
-		this.adjListOriginal = adjList;
+		int n = adjList.length;
+		this.adjList = adjList;
+		this.index = new int[n];
+		this.lowlink = new int[n];
+		this.stack = new int[n];
+		this.onStack = new long[(n + 63) >> 6];
+		this.path = new int[n];
+		this.nextEdge = new int[n];
+		this.component = new int[n];
+		this.componentSize = new int[n];
 	}
 
 	/**
-	 * This method returns the adjacency-structure of the strong connected
-	 * component with the least vertex in a subgraph of the original graph
-	 * induced by the nodes {s, s + 1, ..., n}, where s is a given node. Note
-	 * that trivial strong connected components with just one node will not
-	 * be returned.
+	 * Finds all strongly connected components of the subgraph induced by the
+	 * nodes {from, from + 1, ..., n - 1}. The components are numbered in the
+	 * order they are completed, which is a reverse topological order of the
+	 * condensed graph.
 	 *
-	 * @param node node s
-	 * @return SCCResult with adjacency-structure of the strong
-	 * connected component; null, if no such component exists
+	 * @param from lowest node of the subgraph
+	 * @return number of components
 	 */
-	public SCCResult getAdjacencyList(int node) {
-		this.visited = new boolean[this.adjListOriginal.length];
-		this.lowlink = new int[this.adjListOriginal.length];
-		this.number = new int[this.adjListOriginal.length];
-		this.visited = new boolean[this.adjListOriginal.length];
-		this.stack = new Vector<Integer>();
-		this.currentSCCs = new Vector<Vector<Integer>>();
-
-		this.makeAdjListSubgraph(node);
-
-		for (int i = node; i < this.adjListOriginal.length; i++) {
-			if (!this.visited[i]) {
-				this.getStrongConnectedComponents(i);
-				Vector<Integer> nodes = this.getLowestIdComponent();
-				if (nodes != null && !nodes.contains(new Integer(node)) && !nodes.contains(new Integer(node + 1))) {
-					return this.getAdjacencyList(node + 1);
+	public int findComponents(int from) {
+		int n = adjList.length;
+		Arrays.fill(index, -1);
+		Arrays.fill(component, -1);
+		componentCount = 0;
+		int counter = 0;
+		int top = 0;
+
+		for (int root = from; root < n; root++) {
+			if (index[root] >= 0) {
+				continue;
+			}
+			int depth = 0;
+			index[root] = lowlink[root] = counter++;
+			stack[top++] = root;
+			onStack[root >> 6] |= 1L << root;
+			nextEdge[root] = 0;
+			path[depth++] = root;
+
+			while (depth > 0) {
+				int v = path[depth - 1];
+				if (nextEdge[v] < adjList[v].length) {
+					int w = adjList[v][nextEdge[v]++];
+					if (w < from) {
+						continue;
+					}
+					if (index[w] < 0) {
+						index[w] = lowlink[w] = counter++;
+						stack[top++] = w;
+						onStack[w >> 6] |= 1L << w;
+						nextEdge[w] = 0;
+						path[depth++] = w;
+					} else if ((onStack[w >> 6] & (1L << w)) != 0) {
+						lowlink[v] = Math.min(lowlink[v], index[w]);
+					}
 				} else {
-					Vector<Integer>[] adjacencyList = this.getAdjList(nodes);
-					if (adjacencyList != null) {
-						for (int j = 0; j < this.adjListOriginal.length; j++) {
-							if (adjacencyList[j].size() > 0) {
-								return new SCCResult(adjacencyList, j);
-							}
-						}
+					depth--;
+					if (lowlink[v] == index[v]) {
+						// v is the root of a component
+						int size = 0;
+						int w;
+						do {
+							w = stack[--top];
+							onStack[w >> 6] &= ~(1L << w);
+							component[w] = componentCount;
+							size++;
+						} while (w != v);
+						componentSize[componentCount++] = size;
+					}
+					if (depth > 0) {
+						int u = path[depth - 1];
+						lowlink[u] = Math.min(lowlink[u], lowlink[v]);
 					}
 				}
 			}
 		}
-
-		return null;
+		return componentCount;
 	}
 
 	/**
-	 * Builds the adjacency-list for a subgraph containing just nodes
-	 * >= a given index.
-	 *
-	 * @param node Node with lowest index in the subgraph
+	 * @return the number of components found by the last call of {@link #findComponents(int)}
 	 */
-	private void makeAdjListSubgraph(int node) {
-		this.adjList = new int[this.adjListOriginal.length][0];
-
-		for (int i = node; i < this.adjList.length; i++) {
-			Vector<Integer> successors = new Vector<Integer>();
-			for (int j = 0; j < this.adjListOriginal[i].length; j++) {
-				if (this.adjListOriginal[i][j] >= node) {
-					successors.add(new Integer(this.adjListOriginal[i][j]));
-				}
-			}
-			if (successors.size() > 0) {
-				this.adjList[i] = new int[successors.size()];
-				for (int j = 0; j < successors.size(); j++) {
-					Integer succ = successors.get(j);
-					this.adjList[i][j] = succ.intValue();
-				}
-			}
-		}
+	public int getComponentCount() {
+		return componentCount;
 	}
 
 	/**
-	 * Calculates the strong connected component out of a set of scc's, that
-	 * contains the node with the lowest index.
-	 *
-	 * @return Vector::Integer of the scc containing the lowest nodenumber
+	 * @return component of node v, -1 if v was outside the searched subgraph
 	 */
-	private Vector<Integer> getLowestIdComponent() {
-		int min = this.adjList.length;
-		Vector<Integer> currScc = null;
-
-		for (int i = 0; i < this.currentSCCs.size(); i++) {
-			Vector<Integer> scc = this.currentSCCs.get(i);
-			for (int j = 0; j < scc.size(); j++) {
-				Integer node = scc.get(j);
-				if (node.intValue() < min) {
-					currScc = scc;
-					min = node.intValue();
-				}
-			}
-		}
-
-		return currScc;
+	public int getComponent(int v) {
+		return component[v];
 	}
 
 	/**
-	 * @return Vector[]::Integer representing the adjacency-structure of the
-	 * strong connected component with least vertex in the currently viewed
-	 * subgraph
+	 * @return number of nodes in component c
 	 */
-	@SuppressWarnings("unchecked")
-	private Vector<Integer>[] getAdjList(Vector<Integer> nodes) {
-		Vector<Integer>[] lowestIdAdjacencyList = null;
-
-		if (nodes != null) {
-			lowestIdAdjacencyList = new Vector[this.adjList.length];
-			for (int i = 0; i < lowestIdAdjacencyList.length; i++) {
-				lowestIdAdjacencyList[i] = new Vector<Integer>();
-			}
-			for (int i = 0; i < nodes.size(); i++) {
-				int node = nodes.get(i).intValue();
-				for (int j = 0; j < this.adjList[node].length; j++) {
-					int succ = this.adjList[node][j];
-					if (nodes.contains(new Integer(succ))) {
-						lowestIdAdjacencyList[node].add(new Integer(succ));
-					}
-				}
-			}
-		}
-
-		return lowestIdAdjacencyList;
+	public int getComponentSize(int c) {
+		return componentSize[c];
 	}
 
 	/**
-	 * Searchs for strong connected components reachable from a given node.
+	 * This method returns the adjacency-structure of the strong connected
+	 * component with the least vertex in a subgraph of the original graph
+	 * induced by the nodes {s, s + 1, ..., n}, where s is a given node. Note
+	 * that trivial strong connected components with just one node will not
+	 * be returned.
 	 *
-	 * @param root node to start from.
+	 * @param node node s
+	 * @return SCCResult with adjacency-structure of the strong
+	 * connected component; null, if no such component exists
 	 */
-	private void getStrongConnectedComponents(int root) {
-		this.sccCounter++;
-		this.lowlink[root] = this.sccCounter;
-		this.number[root] = this.sccCounter;
-		this.visited[root] = true;
-		this.stack.add(new Integer(root));
-
-		for (int i = 0; i < this.adjList[root].length; i++) {
-			int w = this.adjList[root][i];
-			if (!this.visited[w]) {
-				this.getStrongConnectedComponents(w);
-				this.lowlink[root] = Math.min(lowlink[root], lowlink[w]);
-			} else if (this.number[w] < this.number[root]) {
-				if (this.stack.contains(new Integer(w))) {
-					lowlink[root] = Math.min(this.lowlink[root], this.number[w]);
-				}
+	public SCCResult getAdjacencyList(int node) {
+		int n = adjList.length;
+		findComponents(node);
+
+		int lowest = -1;
+		for (int v = node; v < n; v++) {
+			if (componentSize[component[v]] > 1) {
+				lowest = v;
+				break;
 			}
 		}
+		if (lowest < 0) {
+			return null;
+		}
 
-		// found scc
-		if ((lowlink[root] == number[root]) && (stack.size() > 0)) {
-			int next = -1;
-			Vector<Integer> scc = new Vector<Integer>();
-
-			do {
-				next = this.stack.get(stack.size() - 1).intValue();
-				this.stack.remove(stack.size() - 1);
-				scc.add(new Integer(next));
-			} while (this.number[next] > this.number[root]);
-
-			// simple scc's with just one node will not be added
-			if (scc.size() > 1) {
-				this.currentSCCs.add(scc);
+		int c = component[lowest];
+		int[][] sccAdjList = new int[n][];
+		for (int v = 0; v < n; v++) {
+			if (component[v] != c) {
+				sccAdjList[v] = NO_SUCCESSORS;
+				continue;
+			}
+			int count = 0;
+			for (int w : adjList[v]) {
+				if (component[w] == c) {
+					count++;
+				}
+			}
+			int[] successors = new int[count];
+			count = 0;
+			for (int w : adjList[v]) {
+				if (component[w] == c) {
+					successors[count++] = w;
+				}
 			}
+			sccAdjList[v] = successors;
 		}
+		return new SCCResult(sccAdjList, lowest);
 	}
 }
@@ -1,55 +1,197 @@
 package scheduler;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import scheduler.SARetiming.SARetimingResultPackage;
 
 public class Sweep {
 	
+	private static final String HEADER = "Graph,Size,Loose nodes,Loose node shift max,Allow shifts >1,Stop temperature,"
+			+ "Run,Initial temperature,Runtime,"
+			+ "Initial II,Initial shift sum,Best II,Best shift sum,"
+			+ "Initial shift max,Initial cost,Best shift max,Best cost,"
+			+ "SA II,SA shift sum,SA shift max,SA cost,"
+			+ "Worst II,Worst shift sum,Worst shift max,Worst cost\n";
+	
 	public static void multipleRuns(Graph graph, int runs, boolean allowShiftsGr1) {
+		multipleRuns(graph, runs, allowShiftsGr1, 1);
+	}
+	
+	/**
+	 * Runs the annealing several times on the same graph. With more than one
+	 * thread the runs are independent replicas of one engine that are spread
+	 * over a thread pool; the results are aggregated in run order. If the
+	 * system property {@value ResultCache#SEED_PROPERTY} is set, run i is a
+	 * replica seeded with seed + i and goes through the {@link ResultCache}.
+	 * @param graph - graph to retime
+	 * @param runs - number of runs
+	 * @param allowShiftsGr1 - allow shifts greater than 1
+	 * @param threads - number of worker threads, 1 runs everything on the calling thread
+	 */
+	public static void multipleRuns(Graph graph, int runs, boolean allowShiftsGr1, int threads) {
 		SARetiming sa = new SARetiming(graph);
 		sa.setAllowShiftsGr1(allowShiftsGr1);
+		Long seed = Long.getLong(ResultCache.SEED_PROPERTY);
+		final ResultCache resultCache = new ResultCache();
 		
 		SARetimingResultPackage[] resultPackages = new SARetimingResultPackage[runs];
 		float avExeTime = 0;
+		int annealed = 0;
 		float bestCost = Float.MAX_VALUE;
 		float worstCost = Float.MIN_VALUE;
 		
+		int workers = Math.max(Math.min(threads, runs), 1);
+		ExecutorService executor = null;
+		List<Future<SARetimingResultPackage>> futures = null;
+		if (threads > 1) {
+			executor = Executors.newFixedThreadPool(workers);
+			futures = new ArrayList<Future<SARetimingResultPackage>>(runs);
+		}
+		
 		long startTime = System.currentTimeMillis();
-		for (int i = 0; i < runs; i++) {
-			SARetimingResultPackage resultPackage = sa.run(0);
-			resultPackages[i] = resultPackage;
-			
-			avExeTime += (float) resultPackage.wallclock;
-			if (resultPackage.bestCost < bestCost) {
-				bestCost = resultPackage.bestCost;
+		SARetiming[] replicas = new SARetiming[runs];
+		boolean complete = false;
+		if (executor != null) {
+			for (int i = 0; i < runs; i++) {
+				final SARetiming replica = sa.replica();
+				if (seed != null) {
+					replica.setSeed(seed + i);
+				}
+				replicas[i] = replica;
+				futures.add(executor.submit(new Callable<SARetimingResultPackage>() {
+					public SARetimingResultPackage call() {
+						return resultCache.run(replica, 0);
+					}
+				}));
+			}
+		}
+		try {
+			for (int i = 0; i < runs; i++) {
+				SARetimingResultPackage resultPackage;
+				if (executor != null) {
+					resultPackage = futures.get(i).get();
+				} else if (seed != null) {
+					SARetiming replica = sa.replica();
+					replica.setSeed(seed + i);
+					resultPackage = resultCache.run(replica, 0);
+				} else {
+					resultPackage = sa.run(0);
+				}
+				resultPackages[i] = resultPackage;
+				
+				if (!resultPackage.cached) {
+					// a hit carries the time of the stored run, not time spent here
+					avExeTime += (float) resultPackage.wallclock;
+					annealed++;
+				}
+				if (resultPackage.bestCost < bestCost) {
+					bestCost = resultPackage.bestCost;
+				}
+				if (resultPackage.bestCost > worstCost) {
+					worstCost = resultPackage.bestCost;
+					resultPackage.printDiagnose();
+				}
+				
+				System.out.println("Sweep:\t" + ((float) (i+1) / (float) runs * 100f) + "% done");
 			}
-			if (resultPackage.bestCost > worstCost) {
-				worstCost = resultPackage.bestCost;
-				resultPackage.printDiagnose();
+			complete = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+				if (!complete) {
+					// the runs do not react to interrupts, stop the ones in progress
+					for (SARetiming replica : replicas) {
+						replica.cancel();
+					}
+				}
 			}
-			
-			System.out.println("Sweep:\t" + ((float) (i+1) / (float) runs * 100f) + "% done");
 		}
 		long wallclock = System.currentTimeMillis() - startTime;
 		
-		avExeTime /= 1000f * (float) runs;
+		// busy share of the workers: sum of the single run times / (total time * workers),
+		// about 1 for the sequential path. Not a speedup, the single runs slow down when
+		// they share the machine.
+		float efficiency = avExeTime / ((float) Math.max(wallclock, 1) * workers);
+		avExeTime /= 1000f * (float) Math.max(annealed, 1);
 
 		System.out.println("\n\n\n\nTotal sweep runtime:\t" + ((float) wallclock / 1000f) + "s");
 		System.out.println("Average execution time:\t" + avExeTime + "s");
+		System.out.println("Threads:\t\t" + Math.max(threads, 1));
+		System.out.println("Parallel efficiency:\t" + efficiency);
+		if (seed != null) {
+			System.out.println("Cached results:\t\t" + resultCache.getHits() + " of " + runs);
+		}
 		System.out.println("Best result:\t\t" + bestCost);
 		System.out.println("Worst result:\t\t" + worstCost);
 	}
 	
 	public static void sweep(int runsPerGraph, float stopTemp, boolean allowShiftsGr1, List<String> graphBlacklist) {
+		sweep(runsPerGraph, stopTemp, allowShiftsGr1, graphBlacklist, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Runs the annealing on all graphs in the graphs folder and writes one CSV
+	 * row per run to the results folder.
+	 * <p>
+	 * Every (graph, run) pair is a task. The tasks are sorted by their
+	 * expected runtime, longest first, and the worker threads take the next
+	 * task whenever they are idle, so a slow graph starts early and cannot
+	 * hold up the end of the sweep. The expected runtime is the mean runtime
+	 * of the graph in earlier sweep results if all graphs have one, the
+	 * number of moves per temperature level (size^(4/3)) otherwise. The rows
+	 * are written in graph and run order, as by a sequential sweep.
+	 * <p>
+	 * Every completed run is also appended to a {@link SweepJournal} in the
+	 * results folder, named by the stop temperature, allowShiftsGr1, the
+	 * number of runs per graph and a hash of the graph names. A sweep that
+	 * was interrupted is resumed by starting it again with the same
+	 * parameters: the runs found in the journal are not run again, their rows
+	 * are taken from the journal. Rows are looked up with the hash of the
+	 * graph's content, so the runs of a changed graph file are run again. The
+	 * journal is deleted when the sweep is complete.
+	 * <p>
+	 * If the system property {@value ResultCache#SEED_PROPERTY} is set, run r
+	 * of every graph is seeded with seed + r and goes through the
+	 * {@link ResultCache}, so a sweep after a change to a few graphs only
+	 * anneals those again.
+	 * @param runsPerGraph - number of runs per graph
+	 * @param stopTemp - stop temperature of the annealing
+	 * @param allowShiftsGr1 - allow shifts greater than 1
+	 * @param graphBlacklist - names of graphs to skip
+	 * @param threads - number of worker threads
+	 */
+	public static void sweep(int runsPerGraph, float stopTemp, boolean allowShiftsGr1, List<String> graphBlacklist, int threads) {
 		System.out.println("\n\n\nDoing sweep over all graphs with " + runsPerGraph + " runs per graph.\nAllowShiftsGr1 = " + allowShiftsGr1 + "\n\n");
 		
 		File folder = new File("graphs");
@@ -76,46 +218,132 @@ public class Sweep {
 		
 		long startTime = System.currentTimeMillis();
 		
+		GraphCache cache = new GraphCache(true);
+		Long seed = Long.getLong(ResultCache.SEED_PROPERTY);
+		final ResultCache resultCache = new ResultCache();
+		Map<String, Float> pastRuntimes = pastRuntimes(new File("results"));
+		boolean usePastRuntimes = pastRuntimes.keySet().containsAll(graphFiles);
+		final SweepTask[] tasks = new SweepTask[graphFiles.size() * runsPerGraph];
+		for (int g = 0; g < graphFiles.size(); g++) {
+			String graphName = graphFiles.get(g);
+			Graph graph = cache.load("graphs/" + graphName + ".dot");
+			String graphHash = ResultCache.hex(ResultCache.graphHash(graph));
+			SARetiming sa = new SARetiming(graph);
+			sa.setStopTemp(stopTemp);
+			sa.setAllowShiftsGr1(allowShiftsGr1);
+			double expected = usePastRuntimes ? pastRuntimes.get(graphName) : Math.pow(graph.size(), 4. / 3.);
+			for (int run = 1; run <= runsPerGraph; run++) {
+				int index = g * runsPerGraph + run - 1;
+				SARetiming replica = sa.replica();
+				if (seed != null) {
+					replica.setSeed(seed + run);
+				}
+				tasks[index] = new SweepTask(index, g, graphName, graphHash, run, replica, expected);
+			}
+		}
+		
+		final SweepJournal journal;
+		try {
+			journal = new SweepJournal(new File("results/SweepJournal_" + stopTemp + "_" + allowShiftsGr1 + "_" + runsPerGraph
+					+ "_" + String.format("%08x", graphFiles.hashCode()) + ".csv"), HEADER);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		List<SweepTask> missing = new ArrayList<SweepTask>(tasks.length);
+		for (SweepTask task : tasks) {
+			if (journal.getRow(task.graphHash, task.graphName, task.run) == null) {
+				missing.add(task);
+			}
+		}
+		if (missing.size() < tasks.length) {
+			System.out.println("Resuming sweep: " + (tasks.length - missing.size()) + " of " + tasks.length + " runs found in the journal\n");
+		}
+		final SweepTask[] order = missing.toArray(new SweepTask[missing.size()]);
+		Arrays.sort(order, new Comparator<SweepTask>() {
+			public int compare(SweepTask a, SweepTask b) {
+				if (a.expected != b.expected) {
+					return a.expected > b.expected ? -1 : 1;
+				}
+				return a.index - b.index;
+			}
+		});
+		
+		final int graphCount = graphFiles.size();
+		final boolean shiftsGr1 = allowShiftsGr1;
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicIntegerArray skipCounters = new AtomicIntegerArray(graphCount);
+		final AtomicBoolean aborted = new AtomicBoolean();
+		int workers = Math.max(Math.min(threads, order.length), 1);
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		boolean complete = false;
+		
 		try {
 			String dateTime = new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss").format(Calendar.getInstance().getTime());
 			BufferedWriter writer = new BufferedWriter(new FileWriter("results/SweepResults_" + dateTime + ".csv"));
 			
-			writer.write("Graph,Size,Loose nodes,Loose node shift max,Allow shifts >1,Stop temperature,"
-					+ "Run,Initial temperature,Runtime,"
-					+ "Initial II,Initial shift sum,Best II,Best shift sum,"
-					+ "Initial shift max,Initial cost,Best shift max,Best cost,"
-					+ "SA II,SA shift sum,SA shift max,SA cost,"
-					+ "Worst II,Worst shift sum,Worst shift max,Worst cost\n");
-			
-			int graphCounter = 1;
-			StringBuilder skippedGraphs = new StringBuilder().append("\nSkipped graphs:\n");
+			writer.write(HEADER);
+			final OrderedWriter rows = new OrderedWriter(writer, tasks.length);
+			for (SweepTask task : tasks) {
+				String row = journal.getRow(task.graphHash, task.graphName, task.run);
+				if (row != null) {
+					rows.write(task.index, row);
+				}
+			}
 			
-			for (String graphName : graphFiles) {
-				Graph graph = new Dot_reader(true).parse("graphs/" + graphName + ".dot");
-				SARetiming sa = new SARetiming(graph);
-				sa.setStopTemp(stopTemp);
-				sa.setAllowShiftsGr1(allowShiftsGr1);
-				int skipCounter = 0;
-				
-				for (int run = 1; run <= runsPerGraph; run++) {
-					System.out.print(new SimpleDateFormat("HH:mm:ss").format(Calendar.getInstance().getTime()));
-					System.out.println(" - Running graph " + graphCounter + "/" + graphFiles.size() + ": " + graphName + ", run " + run + "/" + runsPerGraph);
-					try {
-						SARetimingResultPackage res = sa.run(0);
-						writer.write(compileSweepResultsLine(graphName, run, res, allowShiftsGr1));
-					} catch (IllegalArgumentException e) {
-						System.err.println("Critical problem while running " + graphName + ". Skipping.");
-						skipCounter++;
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+			for (int w = 0; w < workers; w++) {
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() throws IOException {
+						boolean done = false;
+						try {
+							work();
+							done = true;
+						} finally {
+							if (!done) {
+								abort(tasks, aborted);
+							}
+						}
+						return null;
 					}
-				}
-				
-				if (skipCounter > 0) {
-					skippedGraphs.append(graphName).append(": ").append(skipCounter).append(" times\n");
-				}
-				
-				graphCounter++;
+					
+					private void work() throws IOException {
+						for (int k = next.getAndIncrement(); k < order.length && !aborted.get(); k = next.getAndIncrement()) {
+							SweepTask task = order[k];
+							System.out.println(new SimpleDateFormat("HH:mm:ss").format(Calendar.getInstance().getTime())
+									+ " - Running graph " + (task.graph + 1) + "/" + graphCount + ": " + task.graphName
+									+ ", run " + task.run + "/" + runsPerGraph + " (task " + (k + 1) + "/" + order.length + ")");
+							SARetimingResultPackage result;
+							try {
+								result = resultCache.run(task.sa, 0);
+							} catch (IllegalArgumentException e) {
+								System.err.println("Critical problem while running " + task.graphName + ". Skipping.");
+								skipCounters.incrementAndGet(task.graph);
+								rows.write(task.index, "");
+								continue;
+							}
+							if (aborted.get()) {
+								// cancelled, not a complete run
+								return;
+							}
+							String row = compileSweepResultsLine(task.graphName, task.run, result, shiftsGr1);
+							// a row the journal rejects is a bug of the row format, it fails the sweep
+							journal.append(task.graphHash, row);
+							rows.write(task.index, row);
+						}
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
 			}
 			
+			StringBuilder skippedGraphs = new StringBuilder().append("\nSkipped graphs:\n");
+			for (int g = 0; g < graphCount; g++) {
+				if (skipCounters.get(g) > 0) {
+					skippedGraphs.append(graphFiles.get(g)).append(": ").append(skipCounters.get(g)).append(" times\n");
+				}
+			}
 			if (skippedGraphs.length() < 20) {
 				skippedGraphs.append("None :-)");
 			}
@@ -123,13 +351,163 @@ public class Sweep {
 			String time = new SimpleDateFormat("HH:mm:ss").format(new Date(System.currentTimeMillis() - startTime - 3600000));
 			writer.write("\n\nSweep duration: " + time);
 			writer.close();
+			journal.delete();
+			complete = true;
 		} catch (IOException e) {
 			e.printStackTrace();
 			return;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			e.getCause().printStackTrace();
+			return;
+		} finally {
+			executor.shutdownNow();
+			if (!complete) {
+				abort(tasks, aborted);
+			}
+			try {
+				journal.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
 		}
 		
 		String time = new SimpleDateFormat("HH:mm:ss").format(new Date(System.currentTimeMillis() - startTime - 3600000));
-		System.out.println("\n\n\nSweep complete.\nIt took " + time + " hours");
+		System.out.println("\n\n\nSweep complete.\nIt took " + time + " hours with " + workers + " threads");
+		if (seed != null) {
+			System.out.println("Cached results: " + resultCache.getHits() + " of " + (resultCache.getHits() + resultCache.getMisses()));
+		}
+	}
+	
+	/**
+	 * Stops a failed sweep: no worker takes another task and the runs in
+	 * progress are cancelled, as they do not react to interrupts. Their
+	 * results are not journaled.
+	 */
+	private static void abort(SweepTask[] tasks, AtomicBoolean aborted) {
+		aborted.set(true);
+		for (SweepTask task : tasks) {
+			task.sa.cancel();
+		}
+	}
+	
+	/**
+	 * Reads the mean runtime of every graph from the sweep results in the given folder.
+	 * @param folder - folder with SweepResults_*.csv files
+	 * @return mean runtime in ms by graph name
+	 */
+	static Map<String, Float> pastRuntimes(File folder) {
+		Map<String, Float> sums = new HashMap<String, Float>();
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (!file.getName().startsWith("SweepResults_") || !file.getName().endsWith(".csv")) {
+					continue;
+				}
+				try {
+					BufferedReader reader = new BufferedReader(new FileReader(file));
+					try {
+						String[] header = reader.readLine().split(",");
+						int graphColumn = Arrays.asList(header).indexOf("Graph");
+						int runtimeColumn = Arrays.asList(header).indexOf("Runtime");
+						if (graphColumn < 0 || runtimeColumn < 0) {
+							continue;
+						}
+						for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+							String[] columns = line.split(",");
+							if (columns.length != header.length) {
+								// end of the rows
+								break;
+							}
+							String graph = columns[graphColumn];
+							Float sum = sums.get(graph);
+							sums.put(graph, (sum == null ? 0 : sum) + Float.parseFloat(columns[runtimeColumn]));
+							Integer count = counts.get(graph);
+							counts.put(graph, (count == null ? 0 : count) + 1);
+						}
+					} finally {
+						reader.close();
+					}
+				} catch (IOException e) {
+					// no history from this file
+				} catch (RuntimeException e) {
+					// no history from this file
+				}
+			}
+		}
+		Map<String, Float> means = new HashMap<String, Float>();
+		for (Map.Entry<String, Float> entry : sums.entrySet()) {
+			means.put(entry.getKey(), entry.getValue() / counts.get(entry.getKey()));
+		}
+		return means;
+	}
+	
+	/**
+	 * One run of one graph in a sweep.
+	 */
+	private static class SweepTask {
+		/**
+		 * Position of the row in the results
+		 */
+		final int index;
+		final int graph;
+		final String graphName;
+		/**
+		 * Hash of the graph's content, see {@link ResultCache#graphHash(Graph)}
+		 */
+		final String graphHash;
+		final int run;
+		final SARetiming sa;
+		final double expected;
+		
+		SweepTask(int index, int graph, String graphName, String graphHash, int run, SARetiming sa, double expected) {
+			this.index = index;
+			this.graph = graph;
+			this.graphName = graphName;
+			this.graphHash = graphHash;
+			this.run = run;
+			this.sa = sa;
+			this.expected = expected;
+		}
+	}
+	
+	/**
+	 * Writes rows that are completed in any order in index order: a row is
+	 * held back until all rows before it are written.
+	 */
+	private static class OrderedWriter {
+		private final Writer writer;
+		private final String[] pending;
+		private int next;
+		
+		OrderedWriter(Writer writer, int rows) {
+			this.writer = writer;
+			this.pending = new String[rows];
+		}
+		
+		/**
+		 * @param index - position of the row
+		 * @param row - the row, empty for a run that failed
+		 */
+		synchronized void write(int index, String row) throws IOException {
+			pending[index] = row;
+			boolean written = false;
+			while (next < pending.length && pending[next] != null) {
+				writer.write(pending[next]);
+				pending[next] = null;
+				next++;
+				written = true;
+			}
+			if (written) {
+				writer.flush();
+			}
+		}
 	}
 	
 	private static String compileSweepResultsLine(String graphName, int run, SARetimingResultPackage res, boolean allowShiftsGr1) {
@@ -0,0 +1,143 @@
+package scheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only journal of the completed runs of a sweep.
+ * <p>
+ * Every completed run is appended as its CSV row, prefixed with the hash of
+ * the graph it ran on, with a single write and forced to disk before
+ * {@link #append(String, String)} returns, so a row is either complete in
+ * the journal or (after a crash during the write) a partial last line.
+ * Opening an existing journal cuts off such a partial line and reads the
+ * complete rows; malformed rows are skipped, their runs count as missing.
+ * A restarted sweep looks its runs up with
+ * {@link #getRow(String, String, int)} and only runs the missing ones. As
+ * the graph hash is part of the key, rows of a graph whose file changed
+ * since are not found.
+ */
+public class SweepJournal {
+
+	private final File file;
+	private final int columns;
+	private final FileChannel channel;
+	private final Map<String, String> rows = new HashMap<String, String>();
+
+	/**
+	 * Opens the journal, creating it with the given header if it does not exist.
+	 * @param file - journal file
+	 * @param header - CSV header line of the rows, with line break
+	 */
+	public SweepJournal(File file, String header) throws IOException {
+		this.file = file;
+		this.columns = header.split(",").length + 1;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		recover();
+		if (channel.size() == 0) {
+			write("Graph hash," + header);
+		}
+	}
+
+	/**
+	 * Reads all complete rows and cuts off a partial last line.
+	 */
+	private void recover() throws IOException {
+		byte[] content = Files.readAllBytes(file.toPath());
+		int end = content.length;
+		while (end > 0 && content[end - 1] != '\n') {
+			end--;
+		}
+		if (end < content.length) {
+			channel.truncate(end);
+			channel.force(true);
+		}
+		String text = new String(content, 0, end, StandardCharsets.UTF_8);
+		for (String line : text.split("\n")) {
+			String key = key(line);
+			if (key != null) {
+				rows.put(key, line.substring(line.indexOf(',') + 1) + "\n");
+			}
+		}
+	}
+
+	private static String key(String graphHash, String graphName, int run) {
+		return graphHash + "," + graphName + "," + run;
+	}
+
+	/**
+	 * @param line - journal line without line break
+	 * @return the key of the line, null for the header or a malformed line
+	 */
+	private String key(String line) {
+		String[] values = line.split(",");
+		if (values.length != columns || values[0].isEmpty() || values[0].equals("Graph hash")) {
+			return null;
+		}
+		try {
+			return key(values[0], values[1], Integer.parseInt(values[7]));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param graphHash - hash of the graph's content
+	 * @return the row of the given run if it is in the journal, null otherwise
+	 */
+	public synchronized String getRow(String graphHash, String graphName, int run) {
+		return rows.get(key(graphHash, graphName, run));
+	}
+
+	/**
+	 * @return number of runs in the journal
+	 */
+	public synchronized int size() {
+		return rows.size();
+	}
+
+	/**
+	 * Appends the row of a completed run and forces it to disk.
+	 * @param graphHash - hash of the graph's content, without commas
+	 * @param row - CSV row as written by the sweep, with line break
+	 * @throws IllegalArgumentException if the row does not match the header
+	 */
+	public synchronized void append(String graphHash, String row) throws IOException {
+		String line = graphHash + "," + row;
+		String key = key(line.trim());
+		if (key == null) {
+			throw new IllegalArgumentException("Malformed journal row: " + line.trim());
+		}
+		write(line);
+		rows.put(key, row);
+	}
+
+	private void write(String line) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+		long position = channel.size();
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		channel.force(true);
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Closes and deletes the journal, to be called when the sweep is complete.
+	 */
+	public void delete() throws IOException {
+		close();
+		Files.deleteIfExists(file.toPath());
+	}
+
+}
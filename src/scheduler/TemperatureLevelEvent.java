@@ -0,0 +1,48 @@
+package scheduler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of one temperature level of {@link SARetiming}. Its duration is
+ * the wall-clock time of the level.
+ */
+@Name("scheduler.TemperatureLevel")
+@Label("Temperature Level")
+@Category({ "Scheduler", "Simulated Annealing" })
+@Description("One temperature level of a retiming run")
+class TemperatureLevelEvent extends jdk.jfr.Event {
+
+	@Label("Run")
+	@Description("Number of the run, see the Annealing Run event")
+	long run;
+
+	@Label("Level")
+	int level;
+
+	@Label("Temperature")
+	float temperature;
+
+	@Label("Moves Proposed")
+	int proposed;
+
+	@Label("Moves Accepted")
+	int accepted;
+
+	@Label("Current Cost")
+	float cost;
+
+	@Label("Best Cost")
+	float bestCost;
+
+	@Label("Best II")
+	int bestII;
+
+	@Label("Allocated")
+	@DataAmount
+	long allocated;
+
+}
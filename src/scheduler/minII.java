@@ -6,6 +6,16 @@ import java.util.Vector;
 
 public class minII {
 
+	/**
+	 * Recurrence constrained minimum II, max over all cycles of
+	 * ceil(sum of delays / sum of iteration distances), computed in polynomial
+	 * time with {@link CycleRatio}. Same result as {@link #getMinII(Graph, boolean)}
+	 * without enumerating the cycles, and 0 for an acyclic graph.
+	 */
+	public static int getRecMII(Graph g) {
+		return new CycleRatio(g).getRecMII();
+	}
+
 	public static Integer getMinII(Graph g, boolean print) {
 		ElementaryCyclesSearch ecs = new ElementaryCyclesSearch(g);
 		List<List<Node>> cycles = ecs.getElementaryCycles();
@@ -0,0 +1,34 @@
+package scheduler;
+
+import java.io.File;
+import java.util.NoSuchElementException;
+
+/**
+ * The RecMII of {@link CycleRatio} must equal the one of the cycle
+ * enumeration in {@link minII#getMinII(Graph, boolean)}. The enumeration is
+ * exponential, so only graphs with less than 200 nodes are compared.
+ */
+public class CycleRatioTest {
+
+	public static void main(String[] args) {
+		int tested = 0;
+		for (File file : Tests.graphs(args)) {
+			Graph graph = new Dot_reader(true).parse(file.getPath());
+			if (graph.size() >= 200) {
+				continue;
+			}
+			int expected;
+			try {
+				expected = minII.getMinII(graph, false);
+			} catch (NoSuchElementException e) {
+				// no cycles
+				expected = 0;
+			}
+			int recMII = new CycleRatio(graph).getRecMII();
+			Tests.check(recMII == expected, file.getName() + ": RecMII " + recMII + ", cycle enumeration " + expected);
+			tested++;
+		}
+		System.out.println("CycleRatioTest: " + tested + " graphs OK");
+	}
+
+}
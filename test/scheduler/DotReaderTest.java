@@ -0,0 +1,55 @@
+package scheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * {@link Dot_reader} must read the same graphs as the line-wise regular
+ * expression parser it replaced, {@link Benchmark#parseRegex(String, boolean)},
+ * with and without back edges. A small file checks the statements the
+ * parsers could disagree on: a node statement without an attribute list is
+ * skipped by both, and a default node statement adds no node.
+ */
+public class DotReaderTest {
+
+	private static final String STATEMENTS = "digraph G {\n"
+			+ "node [shape=box];\n"
+			+ "a [label=\"a:add\"];\n"
+			+ "b;\n"
+			+ "c [label=\"c:mul\"];\n"
+			+ "a -> b;\n"
+			+ "b -> c;\n"
+			+ "c -> a [label=\"2\"];\n"
+			+ "}\n";
+
+	public static void main(String[] args) throws IOException {
+		int tested = 0;
+		for (File file : Tests.graphs(args)) {
+			compare(file.getPath(), file.getName());
+			tested++;
+		}
+
+		File file = File.createTempFile("statements", ".dot");
+		try {
+			Files.write(file.toPath(), STATEMENTS.getBytes(StandardCharsets.ISO_8859_1));
+			compare(file.getPath(), "statements");
+			Graph graph = new Dot_reader(true).parse(file.getPath());
+			Tests.check(graph.size() == 3, "statements: " + graph.size() + " nodes instead of 3");
+			Tests.check(graph.get(new Node("node")) == null, "statements: default node statement read as node");
+		} finally {
+			file.delete();
+		}
+		System.out.println("DotReaderTest: " + tested + " graphs OK");
+	}
+
+	private static void compare(String fn, String name) throws IOException {
+		for (boolean readBackEdges : new boolean[] { true, false }) {
+			Graph expected = Benchmark.parseRegex(fn, readBackEdges);
+			Graph graph = new Dot_reader(readBackEdges).parse(fn);
+			Tests.check(Tests.sameGraph(expected, graph), name + ": graphs differ, back edges " + readBackEdges);
+		}
+	}
+
+}
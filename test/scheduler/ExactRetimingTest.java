@@ -0,0 +1,128 @@
+package scheduler;
+
+import java.io.File;
+import java.util.Arrays;
+
+import scheduler.SARetiming.SARetimingResultPackage;
+
+/**
+ * The II of {@link ExactRetiming} must be the II of its result graph and,
+ * for graphs with less than 200 nodes, the minimum II found by
+ * {@link #minPeriod(RetimingGraph)}.
+ */
+public class ExactRetimingTest {
+
+	/**
+	 * Path weight of unconnected nodes in {@link #minPeriod(RetimingGraph)}
+	 */
+	private static final long NO_PATH = Long.MAX_VALUE / 4;
+
+	public static void main(String[] args) {
+		int tested = 0;
+		for (File file : Tests.graphs(args)) {
+			Graph graph = new Dot_reader(true).parse(file.getPath());
+			SARetimingResultPackage ex = new ExactRetiming(graph).run(0);
+			int achieved = new RetimingGraph(ex.graph).longestZeroWeightedPath();
+			Tests.check(achieved == ex.bestII, file.getName() + ": reported II " + ex.bestII + ", result graph " + achieved);
+			if (graph.size() < 200) {
+				int expected = minPeriod(new RetimingGraph(graph));
+				Tests.check(ex.bestII == expected, file.getName() + ": exact II " + ex.bestII + ", OPT1 " + expected);
+				tested++;
+			}
+		}
+		System.out.println("ExactRetimingTest: " + tested + " graphs compared with OPT1");
+	}
+
+	/**
+	 * Minimum II by OPT1 of Leiserson and Saxe, independent of FEAS: W(u, v)
+	 * is the minimum weight of a path from u to v and D(u, v) the maximum
+	 * delay of such a path. An II c is feasible iff the difference
+	 * constraints r(u) - r(v) <= W(u, v), minus 1 where D(u, v) > c, have a
+	 * solution. The smallest feasible c is searched among the values of D.
+	 * O(n^3) per probe, so only for small graphs.
+	 * @param graph - graph whose cycles all have a positive weight
+	 * @return the minimum II over all retimings
+	 */
+	private static int minPeriod(RetimingGraph graph) {
+		int n = graph.size();
+		long[][] w = new long[n][n];
+		int[][] d = new int[n][n];
+		for (int u = 0; u < n; u++) {
+			Arrays.fill(w[u], NO_PATH);
+			w[u][u] = 0;
+			d[u][u] = graph.getDelay(u);
+		}
+		for (int e = 0; e < graph.weight.length; e++) {
+			int u = graph.source[e], v = graph.target[e];
+			int delay = graph.getDelay(u) + graph.getDelay(v);
+			if (u != v && (graph.weight[e] < w[u][v] || graph.weight[e] == w[u][v] && delay > d[u][v])) {
+				w[u][v] = graph.weight[e];
+				d[u][v] = delay;
+			}
+		}
+		for (int k = 0; k < n; k++) {
+			for (int u = 0; u < n; u++) {
+				if (w[u][k] == NO_PATH) {
+					continue;
+				}
+				for (int v = 0; v < n; v++) {
+					long weight = w[u][k] + w[k][v];
+					int delay = d[u][k] + d[k][v] - graph.getDelay(k);
+					if (weight < w[u][v] || weight == w[u][v] && weight < NO_PATH && delay > d[u][v]) {
+						w[u][v] = weight;
+						d[u][v] = delay;
+					}
+				}
+			}
+		}
+
+		int[] periods = new int[n * n];
+		int count = 0;
+		for (int u = 0; u < n; u++) {
+			for (int v = 0; v < n; v++) {
+				if (w[u][v] < NO_PATH) {
+					periods[count++] = d[u][v];
+				}
+			}
+		}
+		Arrays.sort(periods, 0, count);
+		int low = 0, high = count - 1;
+		while (low < high) {
+			int middle = low + (high - low) / 2;
+			if (feasiblePeriod(w, d, periods[middle])) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return periods[low];
+	}
+
+	/**
+	 * Bellman-Ford on the constraints of {@link #minPeriod(RetimingGraph)}.
+	 */
+	private static boolean feasiblePeriod(long[][] w, int[][] d, int period) {
+		int n = w.length;
+		long[] r = new long[n];
+		for (int round = 0; round <= n; round++) {
+			boolean changed = false;
+			for (int u = 0; u < n; u++) {
+				for (int v = 0; v < n; v++) {
+					if (w[u][v] == NO_PATH) {
+						continue;
+					}
+					long bound = r[v] + w[u][v] - (d[u][v] > period ? 1 : 0);
+					if (r[u] > bound) {
+						r[u] = bound;
+						changed = true;
+					}
+				}
+			}
+			if (!changed) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,56 @@
+package scheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Graphs loaded from the {@link GraphCache} must equal the parsed ones, the
+ * first load builds the cache file and the second one is a hit. A copy of
+ * the first graph under the same name in another directory must get its
+ * own cache file, and a changed modification time with the same content
+ * must still be a hit.
+ */
+public class GraphCacheTest {
+
+	public static void main(String[] args) throws IOException {
+		File directory = Files.createTempDirectory("graphcache").toFile();
+		File copies = Files.createTempDirectory("graphcopies").toFile();
+		try {
+			GraphCache cache = new GraphCache(directory.getPath(), true);
+			int tested = 0;
+			File first = null;
+			for (File file : Tests.graphs(args)) {
+				String fn = file.getPath();
+				Graph expected = new Dot_reader(true).parse(fn);
+				int misses = cache.getMisses();
+				Tests.check(Tests.sameGraph(expected, cache.load(fn)), file.getName() + ": built graph differs");
+				Tests.check(cache.getMisses() == misses + 1, file.getName() + ": first load was no miss");
+				int hits = cache.getHits();
+				Tests.check(Tests.sameGraph(expected, cache.load(fn)), file.getName() + ": cached graph differs");
+				Tests.check(cache.getHits() == hits + 1, file.getName() + ": second load was no hit");
+				if (first == null) {
+					first = file;
+				}
+				tested++;
+			}
+
+			File copy = new File(copies, first.getName());
+			Files.copy(first.toPath(), copy.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+			Tests.check(!cache.cacheFile(copy.getPath()).equals(cache.cacheFile(first.getPath())),
+					"Same named files share a cache file");
+			cache.load(copy.getPath());
+			copy.setLastModified(copy.lastModified() + 10000);
+			int hits = cache.getHits();
+			Tests.check(Tests.sameGraph(new Dot_reader(true).parse(copy.getPath()), cache.load(copy.getPath())),
+					"Touched graph differs");
+			Tests.check(cache.getHits() == hits + 1, "Touched file with the same content was no hit");
+			System.out.println("GraphCacheTest: " + tested + " graphs OK");
+		} finally {
+			Tests.delete(directory);
+			Tests.delete(copies);
+		}
+	}
+
+}
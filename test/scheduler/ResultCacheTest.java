@@ -0,0 +1,67 @@
+package scheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import scheduler.SARetiming.SARetimingResultPackage;
+import scheduler.SARetiming.StopReason;
+
+/**
+ * A seeded annealing run through the {@link ResultCache} a second time must
+ * be a hit with the same result, the same run time and the same best
+ * retiming on the engine. A cancelled run must not be stored.
+ */
+public class ResultCacheTest {
+
+	public static void main(String[] args) throws IOException {
+		File directory = Files.createTempDirectory("resultcache").toFile();
+		try {
+			ResultCache cache = new ResultCache(directory.getPath(), ResultCache.DEFAULT_MAX_BYTES);
+			int tested = 0;
+			Graph annealed = null;
+			for (File file : Tests.graphs(args)) {
+				Graph graph = new Dot_reader(true).parse(file.getPath());
+				SARetiming sa = new SARetiming(graph);
+				sa.setSeed(1);
+				SARetimingResultPackage cold;
+				try {
+					cold = cache.run(sa, 0);
+				} catch (IllegalArgumentException e) {
+					// no legal move, nothing to cache
+					continue;
+				}
+				int[] retiming = sa.getBestRetiming();
+
+				sa = new SARetiming(graph);
+				sa.setSeed(1);
+				int hits = cache.getHits();
+				SARetimingResultPackage warm = cache.run(sa, 0);
+				String name = file.getName();
+				Tests.check(cache.getHits() == hits + 1 && warm.cached, name + ": second run was no hit");
+				Tests.check(cold.bestII == warm.bestII && cold.bestShiftSum == warm.bestShiftSum
+						&& cold.moveEvaluations == warm.moveEvaluations && cold.stopReason == warm.stopReason,
+						name + ": cached metrics differ");
+				Tests.check(cold.wallclock == warm.wallclock, name + ": cached run time differs");
+				Tests.check(Tests.sameGraph(cold.graph, warm.graph), name + ": cached graph differs");
+				Tests.check(Arrays.equals(retiming, sa.getBestRetiming()), name + ": cached retiming not set on the engine");
+				annealed = graph;
+				tested++;
+			}
+			Tests.check(annealed != null, "No graph could be annealed");
+
+			SARetiming sa = new SARetiming(annealed);
+			sa.setSeed(2);
+			sa.cancel();
+			int misses = cache.getMisses();
+			Tests.check(cache.run(sa, 0).stopReason == StopReason.CANCELLED, "Run was not cancelled");
+			sa.setSeed(2);
+			Tests.check(!cache.run(sa, 0).cached && cache.getMisses() == misses + 2, "Cancelled run was cached");
+			System.out.println("ResultCacheTest: " + tested + " graphs OK");
+		} finally {
+			Tests.delete(directory);
+		}
+	}
+
+}
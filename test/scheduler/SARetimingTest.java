@@ -0,0 +1,67 @@
+package scheduler;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import scheduler.SARetiming.SARetimingResultPackage;
+
+/**
+ * Seeded replicas of one engine must give exactly the same results whether
+ * they run one after another or at the same time.
+ */
+public class SARetimingTest {
+
+	private static final int REPLICAS = 2;
+
+	public static void main(String[] args) throws InterruptedException, ExecutionException {
+		ExecutorService executor = Executors.newFixedThreadPool(REPLICAS);
+		try {
+			int tested = 0;
+			for (File file : Tests.graphs(args)) {
+				Graph graph = new Dot_reader(true).parse(file.getPath());
+				SARetimingResultPackage[] sequential = new SARetimingResultPackage[REPLICAS];
+				SARetiming sa = new SARetiming(graph);
+				sa.setSeed(1);
+				try {
+					for (int i = 0; i < REPLICAS; i++) {
+						sequential[i] = sa.replica().run(0);
+					}
+				} catch (IllegalArgumentException e) {
+					// no legal move
+					continue;
+				}
+
+				sa = new SARetiming(graph);
+				sa.setSeed(1);
+				List<Future<SARetimingResultPackage>> futures = new ArrayList<Future<SARetimingResultPackage>>(REPLICAS);
+				for (int i = 0; i < REPLICAS; i++) {
+					final SARetiming replica = sa.replica();
+					futures.add(executor.submit(new Callable<SARetimingResultPackage>() {
+						public SARetimingResultPackage call() {
+							return replica.run(0);
+						}
+					}));
+				}
+				for (int i = 0; i < REPLICAS; i++) {
+					SARetimingResultPackage a = sequential[i];
+					SARetimingResultPackage b = futures.get(i).get();
+					Tests.check(a.bestCost == b.bestCost && a.saCost == b.saCost && a.worstCost == b.worstCost
+							&& a.bestII == b.bestII && a.bestShiftSum == b.bestShiftSum
+							&& a.moveEvaluations == b.moveEvaluations && a.initTemp == b.initTemp,
+							file.getName() + ": replica " + i + " differs: " + a.bestCost + " / " + b.bestCost);
+				}
+				tested++;
+			}
+			System.out.println("SARetimingTest: " + tested + " graphs OK");
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+package scheduler;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helpers of the tests. Every test is a class with a main method that takes
+ * a dot file or a directory of dot files (default graphs) and fails with an
+ * {@link AssertionError}; make test runs all of them.
+ */
+final class Tests {
+
+	private Tests() {
+	}
+
+	/**
+	 * @param args - arguments of the test, the first one is the dot file or directory
+	 * @return the dot files to test
+	 */
+	static List<File> graphs(String[] args) {
+		List<File> files = Benchmark.dotFiles(new File(args.length > 0 ? args[0] : "graphs"));
+		if (files.isEmpty()) {
+			throw new AssertionError("No dot files found");
+		}
+		return files;
+	}
+
+	/**
+	 * @throws AssertionError with the given message unless condition holds
+	 */
+	static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	/**
+	 * @return true iff both graphs have the same nodes with the same resource types and the same edges
+	 */
+	static boolean sameGraph(Graph expected, Graph graph) {
+		if (expected.size() != graph.size()) {
+			return false;
+		}
+		for (Node node : expected) {
+			Node other = graph.get(node);
+			if (other == null || other.getRT() != node.getRT()) {
+				return false;
+			}
+			Map<String, Integer> successors = new HashMap<String, Integer>();
+			for (Map.Entry<Node, Integer> edge : other.allSuccessors().entrySet()) {
+				successors.put(edge.getKey().id, edge.getValue());
+			}
+			Map<Node, Integer> expectedSuccessors = node.allSuccessors();
+			if (expectedSuccessors.size() != successors.size()) {
+				return false;
+			}
+			for (Map.Entry<Node, Integer> edge : expectedSuccessors.entrySet()) {
+				if (!edge.getValue().equals(successors.get(edge.getKey().id))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Deletes the given directory with the files in it.
+	 */
+	static void delete(File directory) {
+		File[] entries = directory.listFiles();
+		if (entries != null) {
+			for (File entry : entries) {
+				entry.delete();
+			}
+		}
+		directory.delete();
+	}
+
+}